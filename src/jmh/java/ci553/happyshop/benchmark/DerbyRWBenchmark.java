@@ -0,0 +1,117 @@
+package ci553.happyshop.benchmark;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.ConnectionPool;
+import ci553.happyshop.storageAccess.DerbyRW;
+import ci553.happyshop.storageAccess.ProductSearchIndex;
+import ci553.happyshop.storageAccess.SchemaMigrator;
+import ci553.happyshop.systemSetup.SetDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the DerbyRW calls on the checkout path against an in-memory Derby database
+ * (jdbc:derby:memory:), set up like SetDatabase with 1000 extra products and the SchemaMigrator indexes.
+ *
+ * purchaseStocksContended runs 8 threads buying the same two products, so it measures the cost
+ * of the product lock stripes and Derby's row locks as well as the updates themselves.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DerbyRWBenchmark {
+    private static final String dbURL = "jdbc:derby:memory:jmhBenchmarkDB";
+    private static final int extraProducts = 1000;
+    private static final int benchmarkStock = 1_000_000_000; // enough that purchases never run out
+
+    private ConnectionPool connectionPool;
+    private DerbyRW derbyRW;
+    private ArrayList<Product> singleLine;
+    private ArrayList<Product> contendedLines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(dbURL + ";create=true")) {
+            SetDatabase.createTablesWithSampleData(connection);
+        }
+        connectionPool = new ConnectionPool(dbURL, 2, 16, 60_000, 5_000, 32);
+        SchemaMigrator.migrate(connectionPool);
+        derbyRW = new DerbyRW(connectionPool, ProductSearchIndex.build(connectionPool));
+
+        for (int i = 0; i < extraProducts; i++) {
+            String id = String.valueOf(1000 + i); // CHAR(4) IDs 1000..1999, clear of the sample 0001..0012
+            derbyRW.insertNewProduct(id, "Benchmark product " + i, 1.0 + i % 100, "imageHolder.jpg", benchmarkStock);
+        }
+        derbyRW.updateProduct("0001", "40 inch TV", 269.00, "0001.jpg", benchmarkStock);
+        derbyRW.updateProduct("0002", "DAB Radio", 29.99, "0002.jpg", benchmarkStock);
+
+        singleLine = new ArrayList<>();
+        singleLine.add(orderLine("1500", "Benchmark product 500", 1.0));
+
+        contendedLines = new ArrayList<>();
+        contendedLines.add(orderLine("0001", "40 inch TV", 269.00));
+        contendedLines.add(orderLine("0002", "DAB Radio", 29.99));
+    }
+
+    // a trolley line ordering one unit
+    private static Product orderLine(String id, String des, double price) {
+        Product product = new Product(id, des, id + ".jpg", price, benchmarkStock);
+        product.setOrderedQuantity(1);
+        return product;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connectionPool.close();
+        try {
+            DriverManager.getConnection(dbURL + ";drop=true");
+        } catch (SQLException e) {
+            // Derby reports a successful drop with SQLState 08006
+            if (!"08006".equals(e.getSQLState())) {
+                System.out.println("Failed to drop the benchmark database: " + e.getMessage());
+            }
+        }
+    }
+
+    @Benchmark
+    public Product searchByProductId() throws SQLException {
+        return derbyRW.searchByProductId("1500");
+    }
+
+    @Benchmark
+    public ArrayList<Product> searchProduct() throws SQLException {
+        return derbyRW.searchProduct("product 12"); // matches 11 of the benchmark products
+    }
+
+    @Benchmark
+    public ArrayList<Product> purchaseStocks() throws SQLException {
+        return derbyRW.purchaseStocks(singleLine);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ArrayList<Product> purchaseStocksContended() throws SQLException {
+        return derbyRW.purchaseStocks(contendedLines);
+    }
+}
@@ -0,0 +1,102 @@
+package ci553.happyshop.benchmark;
+
+import ci553.happyshop.orderManagement.OrderCounter;
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.storageAccess.OrderFileManager;
+import ci553.happyshop.utility.StorageLocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks the file-based order storage: OrderCounter.generateOrderId(),
+ * OrderFileManager.createOrderFile() and OrderFileManager.updateAndMoveOrderFile().
+ *
+ * The order files are written to a temporary directory that is deleted afterwards.
+ * OrderCounter always uses orders/orderCounter.txt relative to the working directory,
+ * which the benchmark profile sets to target/jmh-work.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderStorageBenchmark {
+    private static final String orderDetail = """
+            Order ID: 1
+            State: Ordered
+            OrderedDateTime: 2025-01-01 10:00:00
+            ProgressingDateTime:
+            CollectedDateTime:
+            Items:
+             0001    40 inch TV         ( 1) £ 269.00
+             0002    DAB Radio          ( 2) £  59.98
+            --------------------------------------------
+             Total                               £ 328.98""";
+
+    private Path tempDir;
+    private Path orderedDir;
+    private Path progressingDir;
+    private long nextOrderId;
+    private boolean movedToProgressing; // where the order file used by updateAndMoveOrderFile is now
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("happyshop-jmh-orders");
+        orderedDir = tempDir.resolve("ordered");
+        progressingDir = tempDir.resolve("progressing");
+        Files.createDirectories(orderedDir);
+        Files.createDirectories(progressingDir);
+        OrderFileManager.createOrderFile(orderedDir, 0, orderDetail); // moved back and forth by updateAndMoveOrderFile
+        nextOrderId = 1;
+
+        Files.createDirectories(StorageLocation.ordersPath);
+        if (Files.notExists(StorageLocation.orderCounterPath)) {
+            Files.writeString(StorageLocation.orderCounterPath, "0");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long generateOrderId() throws IOException {
+        return OrderCounter.generateOrderId();
+    }
+
+    @Benchmark
+    public void createOrderFile() throws IOException {
+        OrderFileManager.createOrderFile(orderedDir, nextOrderId++, orderDetail);
+    }
+
+    @Benchmark
+    public boolean updateAndMoveOrderFile() throws IOException {
+        boolean moved = movedToProgressing
+                ? OrderFileManager.updateAndMoveOrderFile(0, OrderState.Ordered, progressingDir, orderedDir)
+                : OrderFileManager.updateAndMoveOrderFile(0, OrderState.Progressing, orderedDir, progressingDir);
+        movedToProgressing = !movedToProgressing;
+        return moved;
+    }
+}
@@ -0,0 +1,51 @@
+package ci553.happyshop.benchmark;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.utility.ProductListFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks ProductListFormatter.buildString(), run for every trolley change, receipt and order file.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductListFormatterBenchmark {
+    @Param({"5", "50"})
+    public int lines;
+
+    private ArrayList<Product> proList;
+
+    @Setup
+    public void setUp() {
+        proList = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            Product product = new Product(String.format("%04d", i + 1), "Benchmark product with a long name " + i,
+                    "imageHolder.jpg", 9.99 + i, 100);
+            product.setOrderedQuantity(1 + i % 5);
+            proList.add(product);
+        }
+    }
+
+    @Benchmark
+    public String buildString() {
+        return ProductListFormatter.buildString(proList);
+    }
+}
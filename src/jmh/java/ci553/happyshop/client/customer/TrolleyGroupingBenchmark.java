@@ -0,0 +1,50 @@
+package ci553.happyshop.client.customer;
+
+import ci553.happyshop.catalogue.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks CustomerModel.groupProductsById(), which merges the trolley lines of the same product
+ * before every checkout. In the same package as CustomerModel because the method is package-private.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrolleyGroupingBenchmark {
+    @Param({"10", "100"})
+    public int trolleySize;
+
+    private ArrayList<Product> trolley;
+
+    @Setup
+    public void setUp() {
+        trolley = new ArrayList<>();
+        int distinctProducts = Math.max(1, trolleySize / 3); // about three lines per product
+        for (int i = 0; i < trolleySize; i++) {
+            int n = i % distinctProducts;
+            trolley.add(new Product(String.format("%04d", n + 1), "Product " + n, "imageHolder.jpg", 9.99, 100));
+        }
+    }
+
+    @Benchmark
+    public ArrayList<Product> groupProductsById() {
+        return CustomerModel.groupProductsById(trolley);
+    }
+}
@@ -1,11 +1,13 @@
 package ci553.happyshop.authentication;
 
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
+import ci553.happyshop.storageAccess.ConnectionPool;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
 import ci553.happyshop.storageAccess.UserDAO;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Manages user authentication and session state
@@ -27,15 +29,12 @@ public class AuthenticationManager {
         System.out.println("🔍 Initializing AuthenticationManager...");
         try {
             System.out.println("🔍 Database URL: " + DatabaseRWFactory.dbURL);
-            Connection connection = DriverManager.getConnection(DatabaseRWFactory.dbURL);
-            System.out.println("✅ Database connection successful!");
+            ConnectionPool connectionPool = DatabaseRWFactory.getConnectionPool();
+            System.out.println("✅ Database connection pool ready!");
 
-            this.userDAO = new UserDAO(connection);
+            this.userDAO = new UserDAO(connectionPool);
             System.out.println("✅ UserDAO created successfully!");
 
-        } catch (SQLException e) {
-            System.err.println("❌ Failed to initialise AuthenticationManager: " + e.getMessage());
-            e.printStackTrace();
         } catch (Exception e) {
             System.err.println("❌ Unexpected error: " + e.getMessage());
             e.printStackTrace();
@@ -66,22 +65,39 @@ public class AuthenticationManager {
      */
     public boolean login(String username, String password) {
         try {
-            User user = userDAO.findByUsername(username);
-
-            if (user != null && user.checkPassword(password)) {
-                this.currentUser = user;
-                System.out.println("✅ Login successful: " + username + " (" + user.getUserType() + ")");
-                return true;
-            } else {
-                System.out.println("❌ Login failed: Invalid credentials");
-                return false;
-            }
+            return checkCredentials(username, password);
         } catch (SQLException e) {
             System.err.println("❌ Login error: " + e.getMessage());
             return false;
         }
     }
 
+    // Looks the user up and checks the password. A database failure is thrown, not treated as wrong credentials.
+    private boolean checkCredentials(String username, String password) throws SQLException {
+        User user = userDAO.findByUsername(username);
+
+        if (user != null && user.checkPassword(password)) {
+            this.currentUser = user;
+            System.out.println("✅ Login successful: " + username + " (" + user.getUserType() + ")");
+            return true;
+        } else {
+            System.out.println("❌ Login failed: Invalid credentials");
+            return false;
+        }
+    }
+
+    /**
+     * Attempts to log in like login(), but looks the user up and checks the (deliberately slow) BCrypt hash
+     * on a background thread, so the login window stays responsive.
+     *
+     * @param completionExecutor where the returned future completes, eg Platform::runLater
+     * @return a future that completes with true if login successful, false if the credentials are wrong,
+     *         or exceptionally if the user could not be looked up (eg database error or pool timeout)
+     */
+    public CompletableFuture<Boolean> loginAsync(String username, String password, Executor completionExecutor) {
+        return AsyncDatabaseRW.submit(() -> checkCredentials(username, password), completionExecutor);
+    }
+
     /**
      * Logs out current user.
      */
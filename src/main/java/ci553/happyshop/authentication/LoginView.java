@@ -1,6 +1,7 @@
 package ci553.happyshop.authentication;
 
 import ci553.happyshop.storageAccess.UserDAO;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -143,30 +144,39 @@ public class LoginView {
                 return;
             }
 
-            // Attempt login
+            // Attempt login, off the JavaFX thread so the window does not freeze while the database is busy
             AuthenticationManager authManager = AuthenticationManager.getInstance();
-            boolean success = authManager.login(username, password);
-
-            if (success) {
-
-                // Play success sound
-                ci553.happyshop.audio.SoundManager.getInstance().play(
-                        ci553.happyshop.audio.SoundEffect.LOGIN_SUCCESS
-                );
-                errorLabel.setVisible(false);
-                User user = authManager.getCurrentUser();
-
-                // Call success callback
-                if (callback != null) {
-                    callback.onLoginSuccess(user);
+            loginButton.setDisable(true);
+            errorLabel.setVisible(false);
+            authManager.loginAsync(username, password, Platform::runLater).whenComplete((success, ex) -> {
+                loginButton.setDisable(false);
+
+                if (ex == null && success) {
+
+                    // Play success sound
+                    ci553.happyshop.audio.SoundManager.getInstance().play(
+                            ci553.happyshop.audio.SoundEffect.LOGIN_SUCCESS
+                    );
+                    errorLabel.setVisible(false);
+                    User user = authManager.getCurrentUser();
+
+                    // Call success callback
+                    if (callback != null) {
+                        callback.onLoginSuccess(user);
+                    }
+
+                    stage.close();  // Close login window
+                } else if (ex == null) {
+                    errorLabel.setText("Invalid username or password");
+                    errorLabel.setVisible(true);
+                    passwordField.clear();
+                } else {
+                    // the credentials were never checked, so they are kept for another try
+                    System.err.println("❌ Login error: " + ex.getMessage());
+                    errorLabel.setText("Login service unavailable, please try again");
+                    errorLabel.setVisible(true);
                 }
-
-                stage.close();  // Close login window
-            } else {
-                errorLabel.setText("Invalid username or password");
-                errorLabel.setVisible(true);
-                passwordField.clear();
-            }
+            });
         });
 
         // Allow Enter key to submit
@@ -1,26 +1,28 @@
 package ci553.happyshop.client;
 
 import ci553.happyshop.authentication.Customer;
+import ci553.happyshop.storageAccess.ConnectionPool;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.PooledConnection;
 import ci553.happyshop.storageAccess.UserDAO;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.Statement;
+import java.sql.PreparedStatement;
 
 public class CreateAdminUser {
     public static void main(String[] args) {
         try {
             // Connect to database
-            Connection connection = DriverManager.getConnection(DatabaseRWFactory.dbURL);
-            UserDAO userDAO = new UserDAO(connection);
+            ConnectionPool connectionPool = DatabaseRWFactory.getConnectionPool();
+            UserDAO userDAO = new UserDAO(connectionPool);
 
             // Delete admin if exists using SQL
             if (userDAO.usernameExists("admin")) {
                 System.out.println("🗑️ Deleting existing admin user...");
-                Statement stmt = connection.createStatement();
-                stmt.executeUpdate("DELETE FROM UserTable WHERE username = 'admin'");
-                stmt.close();
+                try (PooledConnection pc = connectionPool.borrow()) {
+                    PreparedStatement pstmt = pc.prepareStatement("DELETE FROM UserTable WHERE username = ?");
+                    pstmt.setString(1, "admin");
+                    pstmt.executeUpdate();
+                }
                 System.out.println("✅ Old admin deleted!");
             }
 
@@ -32,7 +34,7 @@ public class CreateAdminUser {
             System.out.println("Password: admin123");
             System.out.println("Email: admin@happyshop.com");
 
-            connection.close();
+            connectionPool.close();
 
         } catch (Exception e) {
             System.err.println("❌ Error: " + e.getMessage());
@@ -10,9 +10,10 @@ import ci553.happyshop.client.picker.PickerView;
 
 import ci553.happyshop.client.warehouse.*;
 import ci553.happyshop.orderManagement.OrderHub;
-import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 import java.io.IOException;
 
@@ -79,7 +80,7 @@ public class Main extends Application {
     /** The customer GUI -search prodduct, add to trolley, cancel/submit trolley, view receipt
      *
      * Creates the Model, View, and Controller objects, links them together so they can communicate with each other.
-     * Also creates the DatabaseRW instance via the DatabaseRWFactory and injects it into the CustomerModel.
+     * Also creates the AsyncDatabaseRW instance via the DatabaseRWFactory and injects it into the CustomerModel.
      * Starts the customer interface.
      *
      * Also creates the RemoveProductNotifier, which tracks the position of the Customer View
@@ -89,7 +90,7 @@ public class Main extends Application {
         CustomerView cusView = new CustomerView();
         CustomerController cusController = new CustomerController();
         CustomerModel cusModel = new CustomerModel();
-        DatabaseRW databaseRW = DatabaseRWFactory.createDatabaseRW();
+        AsyncDatabaseRW databaseRW = DatabaseRWFactory.createAsyncDatabaseRW(Platform::runLater);
 
         cusView.cusController = cusController;
         cusController.cusModel = cusModel;
@@ -137,7 +138,7 @@ public class Main extends Application {
 
     /** The Warehouse GUI- for warehouse staff to manage stock
      * Initializes the Warehouse client's Model, View, and Controller,and links them together for communication.
-     * It also creates the DatabaseRW instance via the DatabaseRWFactory and injects it into the Model.
+     * It also creates the AsyncDatabaseRW instance via the DatabaseRWFactory and injects it into the Model.
      * Once the components are linked, the warehouse interface (view) is started.
      *
      * Also creates the dependent HistoryWindow and AlertSimulator,
@@ -148,7 +149,7 @@ public class Main extends Application {
         WarehouseView view = new WarehouseView();
         WarehouseController controller = new WarehouseController();
         WarehouseModel model = new WarehouseModel();
-        DatabaseRW databaseRW = DatabaseRWFactory.createDatabaseRW();
+        AsyncDatabaseRW databaseRW = DatabaseRWFactory.createAsyncDatabaseRW(Platform::runLater);
 
         // Link controller, model, and view and start view
         view.controller = controller;
@@ -1,8 +1,9 @@
 package ci553.happyshop.client.customer;
 
-import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 
 /**
@@ -18,7 +19,7 @@ public class CustomerClient extends Application {
 
     /**
      * Creates the Model, View, and Controller objects and links them together for communication.
-     * It also creates the DatabaseRW instance via the DatabaseRWFactory and injects it into the CustomerModel.
+     * It also creates the AsyncDatabaseRW instance via the DatabaseRWFactory and injects it into the CustomerModel.
      * Once the components are linked, the customer interface (view) is started.
      *
      * Also creates the RemoveProductNotifier, which tracks the position of the Customer View
@@ -29,7 +30,7 @@ public class CustomerClient extends Application {
         CustomerView cusView = new CustomerView();
         CustomerController cusController = new CustomerController();
         CustomerModel cusModel = new CustomerModel();
-        DatabaseRW databaseRW = DatabaseRWFactory.createDatabaseRW();
+        AsyncDatabaseRW databaseRW = DatabaseRWFactory.createAsyncDatabaseRW(Platform::runLater);
 
         cusView.cusController = cusController;
         cusController.cusModel = cusModel;
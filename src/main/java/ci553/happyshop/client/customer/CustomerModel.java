@@ -2,9 +2,11 @@ package ci553.happyshop.client.customer;
 
 import ci553.happyshop.catalogue.Order;
 import ci553.happyshop.catalogue.Product;
-import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
+import ci553.happyshop.storageAccess.StockReservationManager;
 import ci553.happyshop.orderManagement.OrderHub;
 import ci553.happyshop.utility.StorageLocation;
+import ci553.happyshop.utility.UIDispatcher;
 import ci553.happyshop.utility.ProductListFormatter;
 
 import java.io.IOException;
@@ -22,10 +24,11 @@ import java.util.Map;
  */
 public class CustomerModel {
     public CustomerView cusView;
-    public DatabaseRW databaseRW; //Interface type, not specific implementation
-    //Benefits: Flexibility: Easily change the database implementation.
+    public AsyncDatabaseRW databaseRW; //Wraps the DatabaseRW interface, not specific implementation
+    //Every call runs off the JavaFX thread and completes back on it, so a slow database never freezes the window.
 
     private Product theProduct = null; // product found from search
+    private long searchCounter = 0; // identifies the latest search, results of older searches are ignored
     private ArrayList<Product> trolley = new ArrayList<>(); // a list of products in trolley
 
     // Four UI elements to be passed to CustomerView for display updates.
@@ -37,29 +40,51 @@ public class CustomerModel {
     //SELECT productID, description, image, unitPrice,inStock quantity
     void search() throws SQLException {
         String productId = cusView.tfId.getText().trim();
+        long thisSearch = ++searchCounter;
         if(!productId.isEmpty()){
-            theProduct = databaseRW.searchByProductId(productId); //search database
-            if(theProduct != null && theProduct.getStockQuantity()>0){
-                double unitPrice = theProduct.getUnitPrice();
-                String description = theProduct.getProductDescription();
-                int stock = theProduct.getStockQuantity();
-
-                String baseInfo = String.format("Product_Id: %s\n%s,\nPrice: £%.2f", productId, description, unitPrice);
-                String quantityInfo = stock < 100 ? String.format("\n%d units left.", stock) : "";
-                displayLaSearchResult = baseInfo + quantityInfo;
-                System.out.println(displayLaSearchResult);
-            }
-            else{
-                theProduct = null;
-                displayLaSearchResult = "No Product was found with ID " + productId;
-                System.out.println("No Product was found with ID " + productId);
-            }
+            theProduct = null;
+            displayLaSearchResult = "Searching for " + productId + " ...";
+            updateView();
+            databaseRW.searchByProductId(productId).whenComplete((product, ex) -> { //search database
+                if (thisSearch != searchCounter) {
+                    return; // the customer has searched again since, this result is out of date
+                }
+                if (ex != null) {
+                    theProduct = null;
+                    displayLaSearchResult = "Search failed: " + AsyncDatabaseRW.causeOf(ex).getMessage();
+                    System.out.println(displayLaSearchResult);
+                } else {
+                    showSearchResult(productId, product);
+                }
+                updateView();
+            });
         }else{
             theProduct = null;
             displayLaSearchResult = "Please type ProductID";
             System.out.println("Please type ProductID.");
+            updateView();
+        }
+    }
+
+    private void showSearchResult(String productId, Product product) {
+        theProduct = product;
+        // stock held by other customers' checkouts cannot be sold, see StockReservationManager
+        int stock = theProduct == null ? 0
+                : StockReservationManager.getInstance().availableToSell(productId, theProduct.getStockQuantity());
+        if(theProduct != null && stock>0){
+            double unitPrice = theProduct.getUnitPrice();
+            String description = theProduct.getProductDescription();
+
+            String baseInfo = String.format("Product_Id: %s\n%s,\nPrice: £%.2f", productId, description, unitPrice);
+            String quantityInfo = stock < 100 ? String.format("\n%d units left.", stock) : "";
+            displayLaSearchResult = baseInfo + quantityInfo;
+            System.out.println(displayLaSearchResult);
+        }
+        else{
+            theProduct = null;
+            displayLaSearchResult = "No Product was found with ID " + productId;
+            System.out.println("No Product was found with ID " + productId);
         }
-        updateView();
     }
 
     void addToTrolley(){
@@ -97,92 +122,133 @@ public class CustomerModel {
 
         final double finalTotal = total;
 
-        // Show payment window before processing order
+        // Reserve the stock before the customer pays, so they are never charged for products
+        // that sell out while the payment window is open.
+        // Group the products in the trolley by productId to optimize stock checking
+        ArrayList<Product> groupedTrolley = groupProductsById(trolley);
+        ArrayList<Product> orderedProducts = new ArrayList<>(trolley); // the trolley may change while we wait
+        displayLaSearchResult = "Reserving your products ...";
+        updateView();
+        databaseRW.reserveStocks(groupedTrolley).whenComplete((result, ex) -> {
+            if (ex != null) {
+                reportCheckOutError(AsyncDatabaseRW.causeOf(ex));
+            } else if (!result.isReserved()) {
+                // Nothing was reserved, report the products that cannot be bought without charging the customer
+                showInsufficientStock(result.insufficientProducts());
+            } else {
+                displayLaSearchResult = "Products reserved, please complete your payment";
+                updateView();
+                payForReservation(finalTotal, result.reservation(), orderedProducts);
+            }
+        });
+    }
+
+    // Show payment window while the stock is held
+    private void payForReservation(double finalTotal, StockReservationManager.Reservation reservation,
+                                   ArrayList<Product> orderedProducts) {
         ci553.happyshop.payment.PaymentView paymentView = new ci553.happyshop.payment.PaymentView();
 
         paymentView.show(finalTotal, -1, (success, payment) -> {
             if (success) {
-                // Payment was successful, now process the order
-                try {
-                    // Group the products in the trolley by productId to optimize stock checking
-                    // Check the database for sufficient stock for all products in the trolley.
-                    // If any products are insufficient, the update will be rolled back.
-                    // If all products are sufficient, the database will be updated, and insufficientProducts will be empty.
-                    ArrayList<Product> groupedTrolley = groupProductsById(trolley);
-                    ArrayList<Product> insufficientProducts = databaseRW.purchaseStocks(groupedTrolley);
-
-                    if(insufficientProducts.isEmpty()){
-                        // Stock is sufficient for all products
-                        // Get OrderHub and tell it to make a new Order
-                        OrderHub orderHub = OrderHub.getOrderHub();
-                        Order theOrder = orderHub.newOrder(trolley);
-
-                        // Play success sound
-                        ci553.happyshop.audio.SoundManager.getInstance().play(
-                                ci553.happyshop.audio.SoundEffect.ORDER_SUCCESS
-                        );
-
-                        // Clear trolley and show receipt
-                        trolley.clear();
-                        displayTaTrolley = "";
-                        displayTaReceipt = String.format(
-                                "Order_ID: %s\nOrdered_Date_Time: %s\n%s",
-                                theOrder.getOrderId(),
-                                theOrder.getOrderedDateTime(),
-                                ProductListFormatter.buildString(theOrder.getProductList())
-                        );
-                        System.out.println(displayTaReceipt);
-                        updateView();
-
-                    }
-                    else{
-                        // Some products have insufficient stock — build an error message to inform the customer
-                        StringBuilder errorMsg = new StringBuilder();
-                        for(Product p : insufficientProducts){
-                            errorMsg.append("• ").append(p.getProductId()).append(", ")
-                                    .append(p.getProductDescription()).append(" (Only ")
-                                    .append(p.getStockQuantity()).append(" available, ")
-                                    .append(p.getOrderedQuantity()).append(" requested)\n");
+                // Payment was successful, now turn the reservation into a purchase.
+                // The stock is held for this customer, so the purchase only fails if the reservation
+                // expired or the warehouse reduced the stock in the meantime.
+                displayLaSearchResult = "Processing your order ...";
+                updateView();
+                databaseRW.purchaseReserved(reservation).whenComplete((insufficientProducts, ex) -> {
+                    try {
+                        if (ex != null) {
+                            throw AsyncDatabaseRW.causeOf(ex);
                         }
-                        theProduct = null;
-
-                        //TODO
-                        // Add the following logic here:
-                        // 1. Remove products with insufficient stock from the trolley.
-                        // 2. Trigger a message window to notify the customer about the insufficient stock.
-                        displayLaSearchResult = "Checkout failed due to insufficient stock for the following products:\n" + errorMsg.toString();
-                        System.out.println("stock is not enough");
-                        updateView();
-
-                        // Play error sound
-                        ci553.happyshop.audio.SoundManager.getInstance().play(
-                                ci553.happyshop.audio.SoundEffect.ERROR
-                        );
+                        completeCheckOut(orderedProducts, insufficientProducts);
+                    } catch (Throwable e) {
+                        reportCheckOutError(e);
                     }
-                } catch (Exception e) {
-                    displayLaSearchResult = "Error processing order: " + e.getMessage();
-                    System.err.println("❌ ORDER CREATION ERROR:");
-                    System.err.println("Error type: " + e.getClass().getName());
-                    System.err.println("Error message: " + e.getMessage());
-                    e.printStackTrace();
-                    updateView();
-                    ci553.happyshop.audio.SoundManager.getInstance().play(
-                            ci553.happyshop.audio.SoundEffect.ERROR
-                    );
-                }
+                });
             } else {
-                // Payment was cancelled by user
+                // Payment was cancelled by user, give the held stock back
+                databaseRW.releaseReservation(reservation);
                 displayLaSearchResult = "Payment cancelled";
                 updateView();
             }
         });
     }
 
+    private void reportCheckOutError(Throwable e) {
+        displayLaSearchResult = "Error processing order: " + e.getMessage();
+        System.err.println("❌ ORDER CREATION ERROR:");
+        System.err.println("Error type: " + e.getClass().getName());
+        System.err.println("Error message: " + e.getMessage());
+        e.printStackTrace();
+        updateView();
+        ci553.happyshop.audio.SoundManager.getInstance().play(
+                ci553.happyshop.audio.SoundEffect.ERROR
+        );
+    }
+
+    // Called on the JavaFX thread once the reserved stock has been purchased
+    private void completeCheckOut(ArrayList<Product> orderedProducts, ArrayList<Product> insufficientProducts)
+            throws IOException, SQLException {
+        if(insufficientProducts.isEmpty()){
+            // Stock is sufficient for all products
+            // Get OrderHub and tell it to make a new Order
+            OrderHub orderHub = OrderHub.getOrderHub();
+            Order theOrder = orderHub.newOrder(orderedProducts);
+
+            // Play success sound
+            ci553.happyshop.audio.SoundManager.getInstance().play(
+                    ci553.happyshop.audio.SoundEffect.ORDER_SUCCESS
+            );
+
+            // Clear the ordered products from the trolley and show receipt
+            trolley.removeAll(orderedProducts);
+            displayTaTrolley = trolley.isEmpty() ? "" : ProductListFormatter.buildString(trolley);
+            displayTaReceipt = String.format(
+                    "Order_ID: %s\nOrdered_Date_Time: %s\n%s",
+                    theOrder.getOrderId(),
+                    theOrder.getOrderedDateTime(),
+                    ProductListFormatter.buildString(theOrder.getProductList())
+            );
+            System.out.println(displayTaReceipt);
+            updateView();
+
+        }
+        else{
+            showInsufficientStock(insufficientProducts);
+        }
+    }
+
+    private void showInsufficientStock(ArrayList<Product> insufficientProducts) {
+        // Some products have insufficient stock — build an error message to inform the customer
+        StringBuilder errorMsg = new StringBuilder();
+        for(Product p : insufficientProducts){
+            errorMsg.append("• ").append(p.getProductId()).append(", ")
+                    .append(p.getProductDescription()).append(" (Only ")
+                    .append(p.getStockQuantity()).append(" available, ")
+                    .append(p.getOrderedQuantity()).append(" requested)\n");
+        }
+        theProduct = null;
+
+        //TODO
+        // Add the following logic here:
+        // 1. Remove products with insufficient stock from the trolley.
+        // 2. Trigger a message window to notify the customer about the insufficient stock.
+        displayLaSearchResult = "Checkout failed due to insufficient stock for the following products:\n" + errorMsg.toString();
+        System.out.println("stock is not enough");
+        updateView();
+
+        // Play error sound
+        ci553.happyshop.audio.SoundManager.getInstance().play(
+                ci553.happyshop.audio.SoundEffect.ERROR
+        );
+    }
+
     /**
      * Groups products by their productId to optimize database queries and updates.
      * By grouping products, we can check the stock for a given `productId` once, rather than repeatedly
+     * (package-private and static so TrolleyGroupingBenchmark can measure it)
      */
-    private ArrayList<Product> groupProductsById(ArrayList<Product> proList) {
+    static ArrayList<Product> groupProductsById(ArrayList<Product> proList) {
         Map<String, Product> grouped = new HashMap<>();
         for (Product p : proList) {
             String id = p.getProductId();
@@ -208,7 +274,12 @@ public class CustomerModel {
         displayTaReceipt = "";
     }
 
+    // Asks for the customer view to be redrawn at the next frame, with the model's state at that time (see UIDispatcher)
     void updateView() {
+        UIDispatcher.requestRender(this, this::renderView);
+    }
+
+    private void renderView() {
         if(theProduct != null){
             imageName = theProduct.getProductImageName();
             String relativeImageUrl = StorageLocation.imageFolder + imageName; //relative file path, eg images/0001.jpg
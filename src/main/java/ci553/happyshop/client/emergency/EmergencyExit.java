@@ -1,5 +1,6 @@
 package ci553.happyshop.client.emergency;
 
+import ci553.happyshop.orderManagement.OrderHub;
 import ci553.happyshop.utility.UIStyle;
 import ci553.happyshop.utility.WinPosManager;
 import javafx.application.Platform;
@@ -36,6 +37,7 @@ public class EmergencyExit {
         Button btnExit = new Button();
         btnExit.setGraphic(ivExit);
         btnExit.setOnAction(event -> {
+            OrderHub.getOrderHub().shutdown(); // write out the orders still queued before the JVM goes
             Platform.exit(); // Gracefully exit JavaFX
             System.exit(0);//forcefully shut down JVM (in case there are non-JavaFX threads)
         });
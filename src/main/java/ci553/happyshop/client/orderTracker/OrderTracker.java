@@ -1,7 +1,9 @@
 package ci553.happyshop.client.orderTracker;
 
+import ci553.happyshop.orderManagement.OrderEvent;
 import ci553.happyshop.orderManagement.OrderHub;
 import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.utility.UIDispatcher;
 import ci553.happyshop.utility.UIStyle;
 import ci553.happyshop.utility.WinPosManager;
 import javafx.geometry.Pos;
@@ -13,19 +15,22 @@ import javafx.stage.Stage;
 
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Flow;
 
 /**
  * OrderTracker class is for tracking orders and their states.
  * It displays an ordersMap(a list of orders with their associated states) in a TextArea.
- * The ordersMap data is received from the OrderHub.
+ * The ordersMap data is received from the OrderHub: a snapshot of all orders when the tracker
+ * subscribes, then one OrderEvent per change, which is applied to the ordersMap.
  */
 
-public class OrderTracker {
+public class OrderTracker implements Flow.Subscriber<OrderEvent> {
     private final int WIDTH = UIStyle.trackerWinWidth;
     private final int HEIGHT = UIStyle.trackerWinHeight;
 
-    // TreeMap (orderID,state) holding order IDs and their corresponding states.
-    private static final TreeMap<Integer, OrderState> ordersMap = new TreeMap<>();
+    // TreeMap (orderID,state) holding order IDs and their corresponding states, only used on the JavaFX thread.
+    private final TreeMap<Long, OrderState> ordersMap = new TreeMap<>();
+    private Flow.Subscription subscription; // to request the next event from OrderHub
     private final TextArea taDisplay; //area to show all orderId and their state on the GUI
 
      //Constructor initializes the UI, a title Label, and a TextArea for displaying the order details.
@@ -57,25 +62,57 @@ public class OrderTracker {
      */
     public void registerWithOrderHub(){
         OrderHub orderHub = OrderHub.getOrderHub();
-        orderHub.registerOrderTracker(this);
+        orderHub.subscribe(this);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
     }
 
     /**
-     * Sets the order map with new data and refreshes the display.
-     * This method is called by OrderHub when order states are updated.
+     * Applies an order event to the order map and refreshes the display.
+     * This method is called by OrderHub when order states are updated. The event is applied on the
+     * JavaFX thread, and the next one is only requested once it is applied, so events wait in OrderHub's
+     * buffer for this tracker rather than piling up on the JavaFX thread.
+     * The display is redrawn at most once per frame, however many events arrive (see UIDispatcher).
      */
-    public void setOrderMap(TreeMap<Integer, OrderState> om) {
-        ordersMap.clear(); // Clears the current map to replace it with the new data.
-        ordersMap.putAll(om);// Adds all new order data to the map.
-        displayOrderMap();// Updates the display with the new order map.
+    @Override
+    public void onNext(OrderEvent event) {
+        UIDispatcher.runOnFxThread(() -> {
+            applyEvent(event);
+            UIDispatcher.requestRender(this, this::displayOrderMap);// Updates the display with the new order map.
+            subscription.request(1);
+        });
+    }
+
+    private void applyEvent(OrderEvent event) {
+        switch (event) {
+            case OrderEvent.Snapshot snapshot -> {
+                ordersMap.clear(); // Clears the current map to replace it with the new data.
+                ordersMap.putAll(snapshot.orders());
+            }
+            case OrderEvent.OrderAdded added -> ordersMap.put(added.orderId(), added.state());
+            case OrderEvent.StateChanged changed -> ordersMap.put(changed.orderId(), changed.state());
+            case OrderEvent.OrderRemoved removed -> ordersMap.remove(removed.orderId());
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        System.out.println("Order tracker stopped receiving order updates: " + throwable.getMessage());
     }
 
+    @Override
+    public void onComplete() {}
+
      //Displays the current order map in the TextArea.
      //Iterates over the ordersMap and formats each order ID and state for display.
     private void displayOrderMap() {
         StringBuilder sb = new StringBuilder();
-        for(Map.Entry<Integer, OrderState> entry : ordersMap.entrySet()) {
-            int orderId = entry.getKey();
+        for(Map.Entry<Long, OrderState> entry : ordersMap.entrySet()) {
+            long orderId = entry.getKey();
             OrderState orderState = entry.getValue();
             sb.append(orderId).append(" ".repeat(5)).append(orderState).append("\n");
         }
@@ -1,12 +1,16 @@
 package ci553.happyshop.client.picker;
 
+import ci553.happyshop.orderManagement.OrderEvent;
 import ci553.happyshop.orderManagement.OrderHub;
 import ci553.happyshop.orderManagement.OrderState;
 
+import ci553.happyshop.utility.UIDispatcher;
+
 import java.io.IOException;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Flow;
 
 /**
  * PickerModel represents the logic order picker.
@@ -15,7 +19,8 @@ import java.util.TreeSet;
  * 2. Notifying PickerView to Updates user interface.
  *
  * 1. Observing OrderHub.
- * PickerModel is an observer of  OrderHub, receiving orderMap from OrderHub.
+ * PickerModel is an observer of  OrderHub: it subscribes to OrderHub's order events, receiving a snapshot
+ * of the orders first and then each change, and keeps the orders that are ordered or progressing in its orderMap.
  * When a picker claims a task, PickerModel:
  * - Retrieves the first unlocked order from the orderMap.
  * - Locks the selected order to prevent other pickers from accessing it.
@@ -39,7 +44,7 @@ import java.util.TreeSet;
  * in response to centralized changes made by the OrderHub.
  */
 
-public class PickerModel {
+public class PickerModel implements Flow.Subscriber<OrderEvent> {
     public PickerView pickerView;
     private OrderHub orderHub = OrderHub.getOrderHub();
 
@@ -47,11 +52,13 @@ public class PickerModel {
     private String displayTaOrderMap="";
     private String displayTaOrderDetail ="";
 
-    // TreeMap (orderID,state) holding order IDs and their corresponding states.
-    private static TreeMap<Integer, OrderState> orderMap = new TreeMap<>();
-    private static TreeSet<Integer> lockedOrderIds = new TreeSet<>(); // Track locked orders by orderId
+    // TreeMap (orderID,state) holding order IDs and their corresponding states, only used on the JavaFX thread.
+    private final TreeMap<Long, OrderState> orderMap = new TreeMap<>();
+    private Flow.Subscription subscription; // to request the next event from OrderHub
+    private boolean orderMapChanged = false; // displayTaOrderMap must be rebuilt at the next render
+    private static TreeSet<Long> lockedOrderIds = new TreeSet<>(); // Track locked orders by orderId
 
-    private int theOrderId=0; //Order ID assigned to a picker;
+    private long theOrderId=0; //Order ID assigned to a picker;
                               // 0 means no order is currently assigned.
     private OrderState theOrderState;
 
@@ -59,23 +66,34 @@ public class PickerModel {
      * Attempts to find an unlocked order for this picker and mark it as progressing.
      * The order will be locked to prevent other pickers from accessing it.
      * Only the first unlocked order found will be processed.
+     *
+     * The orders are taken from OrderHub's per-state indexes rather than by scanning every order:
+     * first a progressing order that no picker holds (e.g. one left over from before a restart),
+     * then the oldest ordered one. If another picker wins the same order, the next one is tried.
      */
     public void doProgressing() throws IOException {
-        for (Map.Entry<Integer, OrderState> entry : orderMap.entrySet()) {
-            int orderId = entry.getKey();
-            if (!isOrderLocked(orderId)) { // Find the first unlocked order
-                lockOrder(orderId);// Lock the order to prevent other pickers from taking it
-                theOrderId = orderId; // Save the assigned orderId to this picker and update its state
-                theOrderState = OrderState.Progressing;
-                notifyOrderHub();// Notify the OrderHub about the state change
-                updatePickerView(); // Refresh picker view
-                return; // Exit after handling one order
+        for (OrderState state : new OrderState[]{OrderState.Progressing, OrderState.Ordered}) {
+            for (long orderId : orderHub.getOrderIds(state)) {
+                if (!lockOrder(orderId)) { // Find the first unlocked order, and lock it to prevent other pickers from taking it
+                    continue;
+                }
+                boolean claimed = state == OrderState.Progressing // already progressing, nothing to change
+                        || orderHub.changeOrderStateMoveFile(orderId, OrderState.Progressing);
+                if (claimed) {
+                    theOrderId = orderId; // Save the assigned orderId to this picker and update its state
+                    theOrderState = OrderState.Progressing;
+                    // Read order file, ie. order details
+                    displayTaOrderDetail = orderHub.getOrderDetailForPicker(theOrderId);
+                    updatePickerView(); // Refresh picker view
+                    return; // Exit after handling one order
+                }
+                unlockOrder(orderId); // another thread changed the order first
             }
         }
     }
 
     // Lock an order
-    private boolean lockOrder(int orderId) {
+    private boolean lockOrder(long orderId) {
         if (lockedOrderIds.contains(orderId)) {
             return false; // Order is already locked
         } else {
@@ -85,12 +103,12 @@ public class PickerModel {
     }
 
     // Unlock an order
-    private void unlockOrder(int orderId) {
+    private void unlockOrder(long orderId) {
         lockedOrderIds.remove(orderId);
     }
 
     // Check if an order is locked
-    private boolean isOrderLocked(int orderId) {
+    private boolean isOrderLocked(long orderId) {
         return lockedOrderIds.contains(orderId);
     }
 
@@ -109,7 +127,7 @@ public class PickerModel {
     //so it can receive updates about orderMap changes.
     public void registerWithOrderHub(){
         OrderHub orderHub = OrderHub.getOrderHub();
-        orderHub.registerPickerModel(this);
+        orderHub.subscribe(this);
     }
 
     //Notifies the OrderHub of a change in the order state.
@@ -123,29 +141,79 @@ public class PickerModel {
         }
     }
 
-    // Sets the order map with new data and refreshes the display.
-    // This method is called by OrderHub to set orderMap for picker.
-    public void setOrderMap(TreeMap<Integer,OrderState> om) {
-        orderMap.clear();
-        orderMap.putAll(om);
-        displayTaOrderMap= buildOrderMapString();
-        updatePickerView();
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    // Applies an order event to the orderMap and refreshes the display.
+    // This method is called by OrderHub when orders change. The event is applied on the JavaFX thread,
+    // and the next one is only requested once it is applied. The display is redrawn at most once per frame.
+    @Override
+    public void onNext(OrderEvent event) {
+        UIDispatcher.runOnFxThread(() -> {
+            applyEvent(event);
+            orderMapChanged = true;
+            updatePickerView();
+            subscription.request(1);
+        });
     }
 
+    // The picker only keeps orders that are ordered or progressing, collected orders are filtered out.
+    private void applyEvent(OrderEvent event) {
+        switch (event) {
+            case OrderEvent.Snapshot snapshot -> {
+                orderMap.clear();
+                for (Map.Entry<Long, OrderState> entry : snapshot.orders().entrySet()) {
+                    putIfForPicker(entry.getKey(), entry.getValue());
+                }
+            }
+            case OrderEvent.OrderAdded added -> putIfForPicker(added.orderId(), added.state());
+            case OrderEvent.StateChanged changed -> putIfForPicker(changed.orderId(), changed.state());
+            case OrderEvent.OrderRemoved removed -> orderMap.remove(removed.orderId());
+        }
+    }
+
+    private void putIfForPicker(long orderId, OrderState state) {
+        if (state == OrderState.Collected) {
+            orderMap.remove(orderId);
+        } else {
+            orderMap.put(orderId, state);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        System.out.println("Picker stopped receiving order updates: " + throwable.getMessage());
+    }
+
+    @Override
+    public void onComplete() {}
+
     //Builds a formatted string representing the current order map.
     //Each line contains the order ID followed by its state, aligned with spacing.
     private String buildOrderMapString() {
         StringBuilder sb = new StringBuilder();
-        for(Map.Entry<Integer, OrderState> entry : orderMap.entrySet()) {
-            int orderId = entry.getKey();
+        for(Map.Entry<Long, OrderState> entry : orderMap.entrySet()) {
+            long orderId = entry.getKey();
             OrderState orderState = entry.getValue();
             sb.append(orderId).append(" ".repeat(8)).append(orderState).append("\n");
         }
         return sb.toString();
     }
 
+    // Asks for the picker view to be redrawn at the next frame, see UIDispatcher
     private void updatePickerView()
     {
+        UIDispatcher.requestRender(this, this::renderPickerView);
+    }
+
+    private void renderPickerView() {
+        if (orderMapChanged) { // the order list is only rebuilt once per frame, however many events arrived
+            displayTaOrderMap = buildOrderMapString();
+            orderMapChanged = false;
+        }
         pickerView.update(displayTaOrderMap,displayTaOrderDetail);
     }
 }
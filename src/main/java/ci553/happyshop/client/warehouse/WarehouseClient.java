@@ -1,8 +1,9 @@
 package ci553.happyshop.client.warehouse;
 
-import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 
 /**
@@ -18,7 +19,7 @@ public class WarehouseClient extends Application {
 
     /**
      * Initializes the Warehouse client's Model, View, and Controller,and links them together for communication.
-     * It also creates the DatabaseRW instance via the DatabaseRWFactory and injects it into the Model.
+     * It also creates the AsyncDatabaseRW instance via the DatabaseRWFactory and injects it into the Model.
      * Once the components are linked, the warehouse interface (view) is started.
      *
      * Also creates the dependent HistoryWindow and AlertSimulator,
@@ -30,7 +31,7 @@ public class WarehouseClient extends Application {
         WarehouseView view = new WarehouseView();
         WarehouseController controller = new WarehouseController();
         WarehouseModel model = new WarehouseModel();
-        DatabaseRW databaseRW = DatabaseRWFactory.createDatabaseRW();
+        AsyncDatabaseRW databaseRW = DatabaseRWFactory.createAsyncDatabaseRW(Platform::runLater);
 
         view.controller = controller;
         controller.model = model;
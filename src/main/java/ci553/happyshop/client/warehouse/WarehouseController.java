@@ -29,6 +29,9 @@ public class WarehouseController {
             case "Cancel":  // clear the editChild
                 model.doCancel();
                 break;
+            case "LoadMore":  // the search result list was scrolled to its last product
+                model.doLoadMoreResults();
+                break;
         }
     }
 }
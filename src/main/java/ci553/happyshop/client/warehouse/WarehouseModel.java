@@ -1,10 +1,12 @@
 package ci553.happyshop.client.warehouse;
 
 import ci553.happyshop.catalogue.Product;
-import ci553.happyshop.storageAccess.DatabaseRW;
-import ci553.happyshop.storageAccess.DerbyRW;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.ImageFileManager;
+import ci553.happyshop.storageAccess.ProductPage;
+import ci553.happyshop.storageAccess.ProductSortKey;
 import ci553.happyshop.utility.StorageLocation;
+import ci553.happyshop.utility.UIDispatcher;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -16,10 +18,17 @@ import java.util.ArrayList;
 
 public class WarehouseModel {
     public WarehouseView view;
-    public DatabaseRW databaseRW; //Interface type, not specific implementation
-                         //Benefits: Flexibility: Easily change the database implementation.
+    public AsyncDatabaseRW databaseRW; //Wraps the DatabaseRW interface, not specific implementation
+                         //Every call runs off the JavaFX thread and completes back on it.
 
     private ArrayList<Product> productList = new ArrayList<>(); // search results fetched from the database
+    // Search results are fetched a page at a time, the next page is loaded when the ListView is scrolled to the end
+    private static final int SEARCH_PAGE_SIZE = Integer.getInteger("happyshop.search.pageSize", 50);
+    private String searchKeyword = "";  // keyword of the search whose pages are being shown
+    private ProductPage lastSearchPage = ProductPage.empty(); // the most recently loaded page
+    private int searchTotal = 0; // number of products matching searchKeyword
+    private int nextSearchOffset = 0; // where "load more" continues; moves up by one when a loaded product is deleted
+    private long searchCounter = 0; // identifies the latest search, pages of older searches are ignored
     private Product theSelectedPro; // the product selected from the ListView before the user edits or deletes
     private String theNewProId;
 
@@ -44,6 +53,7 @@ public class WarehouseModel {
     private enum UpdateForAction{
         //actions in Search Page
         BtnSearch,  //actually its updating the Observable ProductList
+        LoadMoreResults, //appending the next page of search results to the Observable ProductList
         BtnEdit,
         BtnDelete,
 
@@ -62,32 +72,87 @@ public class WarehouseModel {
 
     void doSearch() throws SQLException {
         String keyword = view.tfSearchKeyword.getText().trim();
+        long thisSearch = ++searchCounter;
         if (!keyword.equals("")) {
-            productList = databaseRW.searchProduct(keyword);
+            databaseRW.searchProductPage(keyword, 0, SEARCH_PAGE_SIZE, ProductSortKey.PRODUCT_ID)
+                    .whenComplete((page, ex) -> {
+                        if (thisSearch != searchCounter) {
+                            return; // a newer search has started, this result is out of date
+                        }
+                        if (ex != null) {
+                            showDatabaseError("search " + keyword, ex);
+                            return;
+                        }
+                        searchKeyword = keyword;
+                        lastSearchPage = page;
+                        productList = new ArrayList<>(page.products());
+                        searchTotal = page.totalCount();
+                        nextSearchOffset = page.nextOffset();
+                        updateView(UpdateForAction.BtnSearch);
+                    });
         }
         else{
+            searchKeyword = "";
+            lastSearchPage = ProductPage.empty();
             productList.clear();
+            searchTotal = 0;
+            nextSearchOffset = 0;
             System.out.println("please type product ID or name to search");
+            updateView(UpdateForAction.BtnSearch);
         }
-        updateView(UpdateForAction.BtnSearch);
+    }
+
+    //called by the view when the last loaded search result has been scrolled into sight
+    void doLoadMoreResults() throws SQLException {
+        if (searchKeyword.isEmpty() || nextSearchOffset >= searchTotal) {
+            return; // nothing searched yet, or every match is already shown
+        }
+        long thisSearch = searchCounter;
+        databaseRW.searchProductPage(searchKeyword, nextSearchOffset, SEARCH_PAGE_SIZE,
+                ProductSortKey.PRODUCT_ID).whenComplete((page, ex) -> {
+                    if (thisSearch != searchCounter) {
+                        return; // a new search has started since this page was requested
+                    }
+                    if (ex != null) {
+                        showDatabaseError("load more results", ex);
+                        return;
+                    }
+                    lastSearchPage = page;
+                    productList.addAll(page.products());
+                    searchTotal = page.totalCount();
+                    nextSearchOffset = page.nextOffset();
+                    updateView(UpdateForAction.LoadMoreResults);
+                });
     }
 
     void doDelete() throws SQLException, IOException {
         System.out.println("delete gets called in model");
         Product pro  = view.obrLvProducts.getSelectionModel().getSelectedItem();
         if (pro != null ) {
-            theSelectedPro = pro;
-            productList.remove(theSelectedPro); //remove the product from product List
-
             //update databse: delete the product from database
-            databaseRW.deleteProduct(theSelectedPro.getProductId());
+            databaseRW.deleteProduct(pro.getProductId()).whenComplete((ignored, ex) -> {
+                if (ex != null) {
+                    showDatabaseError("delete " + pro.getProductId(), ex);
+                    return;
+                }
+                theSelectedPro = pro;
+                if (productList.remove(theSelectedPro)) { //remove the product from product List
+                    // the matches not loaded yet move up by one, so the next page starts one row earlier
+                    nextSearchOffset = Math.max(nextSearchOffset - 1, 0);
+                    searchTotal = Math.max(searchTotal - 1, 0);
+                }
 
-            //delete the image from imageFolder "images/"
-            String imageName = theSelectedPro.getProductImageName(); //eg 0011.jpg;
-            ImageFileManager.deleteImageFile(StorageLocation.imageFolder, imageName);
+                try {
+                    //delete the image from imageFolder "images/"
+                    String imageName = theSelectedPro.getProductImageName(); //eg 0011.jpg;
+                    ImageFileManager.deleteImageFile(StorageLocation.imageFolder, imageName);
+                } catch (IOException e) {
+                    System.out.println("Failed to delete the image of " + pro.getProductId() + ": " + e.getMessage());
+                }
 
-            updateView(UpdateForAction.BtnDelete);
-            theSelectedPro = null;
+                updateView(UpdateForAction.BtnDelete);
+                theSelectedPro = null;
+            });
         }
         else{
             System.out.println("No product was selected");
@@ -162,10 +227,14 @@ public class WarehouseModel {
                 double price = Double.parseDouble(textPrice);
                 int stock= Integer.parseInt(textStock);
                 //update datbase
-                databaseRW.updateProduct(id,description,price,imageName,stock);
-
-                updateView(UpdateForAction.BtnSummitEdit);
-                theSelectedPro=null;
+                databaseRW.updateProduct(id,description,price,imageName,stock).whenComplete((ignored, ex) -> {
+                    if (ex != null) {
+                        showDatabaseError("update " + id, ex);
+                        return;
+                    }
+                    updateView(UpdateForAction.BtnSummitEdit);
+                    theSelectedPro=null;
+                });
             }
         }
         else{
@@ -222,24 +291,57 @@ public class WarehouseModel {
         String description = view.taDescriptionNewPro.getText().trim();
         String iPath = view.imageUriNewPro; //image Path from the imageChooser in View class
 
+        String newProId = theNewProId;
+        //check Id is unique in the background, then validate the rest of the input
+        databaseRW.isProIdAvailable(newProId).whenComplete((idAvailable, ex) -> {
+            if (ex != null) {
+                showDatabaseError("check product ID " + newProId, ex);
+                return;
+            }
+            try {
+                submitNewIfValid(newProId, textPrice, textStock, description, iPath, idAvailable);
+            } catch (IOException e) {
+                System.out.println("Failed to copy the image of " + newProId + ": " + e.getMessage());
+                displayInputErrorMsg = "\u2022 Failed to copy the product image.\n";
+                updateView(UpdateForAction.ShowInputErrorMsg);
+            }
+        });
+    }
+
+    private void submitNewIfValid(String newProId, String textPrice, String textStock, String description,
+                                  String iPath, boolean idAvailable) throws IOException {
         //validate input
-        if (validateInputNewProChild(theNewProId, textPrice, textStock, description, iPath) ==false) {
+        if (validateInputNewProChild(newProId, textPrice, textStock, description, iPath, idAvailable) ==false) {
             updateView(UpdateForAction.ShowInputErrorMsg);
         } else {
             //copy the user selected image to project image folder and using productId as image name
             //and get the image extension from the source image, we write this name to database
-            String imageNameWithExtension = ImageFileManager.copyFileToDestination(view.imageUriNewPro, StorageLocation.imageFolder,theNewProId);
+            String imageNameWithExtension = ImageFileManager.copyFileToDestination(iPath, StorageLocation.imageFolder,newProId);
             double price = Double.parseDouble(textPrice);
             int stock = Integer.parseInt(textStock);
 
             //insertNewProduct to databse (String id, String des,double price,String image,int stock)
             //a record in databse looks like ('0001', '40 inch TV', 269.00,'0001TV.jpg',100)"
-            databaseRW.insertNewProduct(theNewProId,description,price,imageNameWithExtension,stock);
-            updateView(UpdateForAction.BtnSummitNew);
-            theNewProId = null;
+            databaseRW.insertNewProduct(newProId,description,price,imageNameWithExtension,stock).whenComplete((ignored, ex) -> {
+                if (ex != null) {
+                    showDatabaseError("insert " + newProId, ex);
+                    return;
+                }
+                theNewProId = newProId;
+                updateView(UpdateForAction.BtnSummitNew);
+                theNewProId = null;
+            });
         }
     }
 
+    //a database call failed in the background, report it in the alertSimulator
+    private void showDatabaseError(String operation, Throwable ex) {
+        Throwable cause = AsyncDatabaseRW.causeOf(ex);
+        System.out.println("Database error, " + operation + ": " + cause.getMessage());
+        displayInputErrorMsg = "\u2022 Database error, could not " + operation + ".\n";
+        updateView(UpdateForAction.ShowInputErrorMsg);
+    }
+
     private  boolean validateInputEditChild(String txPrice, String txStock,
                                          String description) throws SQLException {
 
@@ -290,15 +392,15 @@ public class WarehouseModel {
     }
 
     private  boolean validateInputNewProChild(String id, String txPrice, String txStock,
-                                   String description, String imageUri) throws SQLException {
+                                   String description, String imageUri, boolean idAvailable) {
 
         StringBuilder errorMessage = new StringBuilder();
         // Validate Id (must be exactly 4 digits)
         if (id == null || !id.matches("\\d{4}"))
             errorMessage.append("\u2022 Product ID must be exactly 4 digits.\n");
 
-        //check Id is unique
-        if(!databaseRW.isProIdAvailable(id))
+        //check Id is unique (looked up by doSubmitNew before validating)
+        if(!idAvailable)
             errorMessage.append("\u2022 Product ID " + id + " is not available.\n");
 
         // Validate Price (must be a positive number, and two digitals )
@@ -346,16 +448,25 @@ public class WarehouseModel {
     }
 
 
+    // Each warehouse update is a separate action (a history record, an error message, a page of results
+    // appended to the list), so they are all run, in order, on the JavaFX thread rather than coalesced
     private void updateView(UpdateForAction updateFor){
+        UIDispatcher.runOnFxThread(() -> renderUpdate(updateFor));
+    }
+
+    private void renderUpdate(UpdateForAction updateFor){
         switch (updateFor) {
             case UpdateForAction.BtnSearch:
-                view.updateObservableProductList(productList);
+                view.updateObservableProductList(productList, searchTotal);
+                break;
+            case UpdateForAction.LoadMoreResults:
+                view.appendToObservableProductList(lastSearchPage.products(), searchTotal);
                 break;
             case UpdateForAction.BtnEdit:
                 view.updateEditProductChild(displayIdEdit,displayPriceEdit,displayStockEdit,displayDescriptionEdit,displayImageUrlEdit);
                 break;
             case UpdateForAction.BtnDelete:
-                view.updateObservableProductList(productList); //update search page in view
+                view.updateObservableProductList(productList, searchTotal); //update search page in view
                 showManageStockHistory(ManageProductType.Deleted);
                 view.resetEditChild();
                 alertSimulator.closeAlertSimulatorWindow();//close AlertSimulatorWindow if exists
@@ -5,6 +5,7 @@ import ci553.happyshop.utility.StorageLocation;
 import ci553.happyshop.utility.UIStyle;
 import ci553.happyshop.utility.WinPosManager;
 import ci553.happyshop.utility.WindowBounds;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -79,6 +80,7 @@ public class WarehouseView  {
     private Label laSearchSummary; //eg. the lable shows "3 products found" after search
     private ObservableList<Product> obeProductList; //observable product list
     ListView<Product> obrLvProducts; //A ListView observes the product list
+    private int loadMoreRequestedAt = -1; // list size when the next page was last requested, avoids asking twice
 
     //ProductFormPage:has two children at a time,
     ComboBox<String> cbProductFormMode; //the first child
@@ -238,6 +240,14 @@ public class WarehouseView  {
                     Label laProToString = new Label(product.toString()); // Create a label for product details
                     HBox hbox = new HBox(10, ivPro, laProToString); // Put ImageView and label in a horizontal layout
                     setGraphic(hbox);  // Set the whole row content
+
+                    // The last loaded product is being shown, ask for the next page of search results.
+                    // Deferred with runLater because the list must not change while its cells are laid out.
+                    int size = obeProductList.size();
+                    if (getIndex() == size - 1 && loadMoreRequestedAt != size) {
+                        loadMoreRequestedAt = size;
+                        Platform.runLater(() -> loadMoreResults());
+                    }
                 }
             }
         });
@@ -490,6 +500,15 @@ public class WarehouseView  {
 
     }
 
+    private void loadMoreResults() {
+        try{
+            controller.process("LoadMore");
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private void imageChooser(MouseEvent event) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Images", "*.png", "*.jpg", "*.jpeg"));
@@ -518,15 +537,22 @@ public class WarehouseView  {
     }
 
     //update the product listVew of serachPage
-    void updateObservableProductList( ArrayList<Product> productList) {
-        int proCounter = productList.size();
-        System.out.println(proCounter);
-        laSearchSummary.setText(proCounter + " products found");
+    //totalFound counts every match, productList may hold only the pages loaded so far
+    void updateObservableProductList( ArrayList<Product> productList, int totalFound) {
+        System.out.println(productList.size() + " of " + totalFound);
+        laSearchSummary.setText(totalFound + " products found");
         laSearchSummary.setVisible(true);
+        loadMoreRequestedAt = -1;
         obeProductList.clear();
         obeProductList.addAll(productList);
     }
 
+    //add the next page of search results to the end of the product listVew
+    void appendToObservableProductList(ArrayList<Product> page, int totalFound) {
+        laSearchSummary.setText(totalFound + " products found");
+        obeProductList.addAll(page);
+    }
+
     void updateBtnAddSub(String stock){
         tfStockEdit.setText(stock);
         tfChangeByEdit.clear();
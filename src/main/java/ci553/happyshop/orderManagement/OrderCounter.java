@@ -4,22 +4,27 @@ import ci553.happyshop.utility.StorageLocation;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * OrderCounter is responsible for generating unique, sequential orderIDs for new orders.
  *
  * <p>This class manages a persistent counter stored in an external text file:(ie,"orders/orderCounter.txt").
- * On first use, it creates the file and starts the counter at 1.
- * For subsequent calls, it reads the current number, increments it by 1, writes the updated value
- * back to the file, and returns the new order ID.</p>
+ * The file holds the high-water mark: the highest order ID any process has reserved so far.</p>
  *
- * <p>File access is synchronized using a file lock to ensure safe operation in a multi-threaded
- * or multi-process environment. The method is simple to use by OrderHub
- * or any component that needs to generate order numbers.</p>
+ * <p>IDs are handed out in blocks. When a process needs IDs, it locks the file once, reads the
+ * high-water mark, writes it back increased by a whole block (happyshop.orders.idBlockSize, default 1000)
+ * and forces it to disk. The IDs of that block are then handed out from memory with an AtomicLong,
+ * with no file access and no lock, until the block is used up.</p>
+ *
+ * <p>This is safe across threads, processes and restarts: each block is reserved under the exclusive
+ * file lock and written to disk before any of its IDs is used, so no ID is ever handed out twice.
+ * The IDs left in a block when a process exits are never used, so order IDs can have gaps.</p>
  *
  * <p>FileChannel allows exclusive locking of files or specific regions of files,
  * which prevents other threads or processes from accessing the file simultaneously,
@@ -31,12 +36,37 @@ import java.nio.channels.FileLock;
  */
 
 public class OrderCounter {
+    private static final long blockSize = Math.max(1, Long.getLong("happyshop.orders.idBlockSize", 1000));
+
+    // The IDs reserved by this process: next is the next one to hand out, last is the last one in the block
+    private record IdBlock(AtomicLong next, long last) {}
+
+    private static volatile IdBlock currentBlock; // null until the first order
+
+    public static long generateOrderId() throws IOException {
+        while (true) {
+            IdBlock block = currentBlock;
+            if (block != null) {
+                long id = block.next().getAndIncrement();
+                if (id <= block.last()) {
+                    return id;
+                }
+            }
+            synchronized (OrderCounter.class) {
+                if (currentBlock == block) { // nobody else has reserved a new block in the meantime
+                    currentBlock = reserveBlock();
+                }
+            }
+        }
+    }
 
-    public static int generateOrderId() throws IOException {
+    // Reserves the next block of IDs in the counter file, for this process only
+    private static IdBlock reserveBlock() throws IOException {
         Path path = StorageLocation.orderCounterPath;
 
-        // Lock and increment the ID
-        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Lock the file so that no other process reserves the same block
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
              FileLock lock = channel.lock()) {
 
             //creates a ByteBuffer of the same size as the file — so you can read the whole thing.
@@ -51,17 +81,18 @@ public class OrderCounter {
              */
 
             //Gets the raw byte array from the buffer so you can convert it to a string or number.
-            String content = new String(buffer.array()).trim();
-            int currentId = Integer.parseInt(content);
-            int newId = currentId + 1;
+            String content = new String(buffer.array(), StandardCharsets.UTF_8).trim();
+            long highWaterMark = content.isEmpty() ? 0 : Long.parseLong(content);
+            long newHighWaterMark = highWaterMark + blockSize;
 
             channel.position(0); // Move to the start of the file
             channel.truncate(0); // Clear all content in the file (file size becomes 0)
             //This wraps an existing byte array into a buffer — so you can write it with channel.write().
-            channel.write(ByteBuffer.wrap(String.valueOf(newId).getBytes()));
+            channel.write(ByteBuffer.wrap(String.valueOf(newHighWaterMark).getBytes(StandardCharsets.UTF_8)));
+            channel.force(false); // the block must be on disk before any of its IDs is used
 
-            System.out.println("OrderId was generated for now: " + newId);
-            return newId;
+            System.out.println("Order IDs " + (highWaterMark + 1) + " to " + newHighWaterMark + " reserved");
+            return new IdBlock(new AtomicLong(highWaterMark + 1), newHighWaterMark);
         }
     }
 }
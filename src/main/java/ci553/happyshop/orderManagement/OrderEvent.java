@@ -0,0 +1,34 @@
+package ci553.happyshop.orderManagement;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * OrderEvent is a change to OrderHub's order map, published to OrderTrackers and PickerModels
+ * through OrderHub's OrderEventPublisher.
+ *
+ * A subscriber first receives a Snapshot of all orders, and then one event per change:
+ *   Snapshot      all orders and their states; replaces whatever the subscriber had
+ *   OrderAdded    a new order was placed
+ *   StateChanged  an order moved to a new state
+ *   OrderRemoved  a collected order left the order map
+ *
+ * The state in an event is the order's state when the event was published, so applying the events
+ * in order (put for added and changed, remove for removed) always ends with the same map as OrderHub.
+ */
+
+public sealed interface OrderEvent {
+
+    record Snapshot(SortedMap<Long, OrderState> orders) implements OrderEvent {
+        public Snapshot {
+            orders = Collections.unmodifiableSortedMap(new TreeMap<>(orders));
+        }
+    }
+
+    record OrderAdded(long orderId, OrderState state) implements OrderEvent {}
+
+    record StateChanged(long orderId, OrderState state) implements OrderEvent {}
+
+    record OrderRemoved(long orderId) implements OrderEvent {}
+}
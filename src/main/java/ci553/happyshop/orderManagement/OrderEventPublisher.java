@@ -0,0 +1,148 @@
+package ci553.happyshop.orderManagement;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+/**
+ * OrderEventPublisher sends OrderEvents to the observers of OrderHub (OrderTrackers and PickerModels).
+ * It is a java.util.concurrent.Flow.Publisher, so observers are Flow.Subscribers and receive
+ * only as many events as they request.
+ *
+ * <p>Each subscriber has its own buffer of at most bufferCapacity events, and its own delivery task on
+ * the executor, so a slow screen never holds up OrderHub or the other screens. publish() only adds the
+ * event to each buffer: the cost of a change is one small event per subscriber, whatever the number of orders.</p>
+ *
+ * <p>When a subscriber falls so far behind that its buffer is full, its buffered events are replaced by
+ * one Snapshot of all orders. It then catches up in one step instead of replaying every change it missed,
+ * and memory stays bounded.</p>
+ *
+ * <p>A new subscriber first receives a Snapshot of all orders, then every event published after it.</p>
+ */
+
+public class OrderEventPublisher implements Flow.Publisher<OrderEvent> {
+    private final int bufferCapacity;
+    private final Supplier<SortedMap<Long, OrderState>> snapshotSupplier; // all orders, for new or lagging subscribers
+    private final Executor executor;
+    private final List<OrderSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public OrderEventPublisher(int bufferCapacity, Supplier<SortedMap<Long, OrderState>> snapshotSupplier,
+                               Executor executor) {
+        this.bufferCapacity = Math.max(1, bufferCapacity);
+        this.snapshotSupplier = snapshotSupplier;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super OrderEvent> subscriber) {
+        OrderSubscription subscription = new OrderSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        synchronized (this) { // no event can be published between the snapshot and the registration
+            subscription.offer(new OrderEvent.Snapshot(snapshotSupplier.get()));
+            subscriptions.add(subscription);
+        }
+    }
+
+    //Adds the event to the buffer of every subscriber
+    public synchronized void publish(OrderEvent event) {
+        for (OrderSubscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * The link between the publisher and one subscriber.
+     * The buffer, demand and state are guarded by the subscription itself. Events are delivered by a
+     * task on the executor, and at most one task runs per subscription, so the subscriber receives its
+     * events one at a time and in order.
+     */
+    private final class OrderSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super OrderEvent> subscriber;
+        private final ArrayDeque<OrderEvent> buffer = new ArrayDeque<>();
+        private long demand;          // events requested by the subscriber and not yet delivered
+        private boolean delivering;   // a delivery task is scheduled or running
+        private boolean cancelled;
+
+        OrderSubscription(Flow.Subscriber<? super OrderEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        synchronized void offer(OrderEvent event) {
+            if (cancelled) {
+                return;
+            }
+            if (buffer.size() >= bufferCapacity) {
+                // too far behind: everything it missed is summed up by one snapshot, taken after this event
+                buffer.clear();
+                buffer.add(new OrderEvent.Snapshot(snapshotSupplier.get()));
+            } else {
+                buffer.add(event);
+            }
+            scheduleDelivery();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("request must be positive: " + n));
+                return;
+            }
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n; // no overflow
+                scheduleDelivery();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        // Called with the lock held
+        private void scheduleDelivery() {
+            if (!delivering && demand > 0 && !buffer.isEmpty()) {
+                delivering = true;
+                executor.execute(this);
+            }
+        }
+
+        // The delivery task: hands out buffered events while the subscriber wants more
+        @Override
+        public void run() {
+            while (true) {
+                OrderEvent event;
+                synchronized (this) {
+                    if (cancelled || demand == 0 || buffer.isEmpty()) {
+                        delivering = false;
+                        return;
+                    }
+                    event = buffer.poll();
+                    demand--;
+                }
+                try {
+                    subscriber.onNext(event);
+                } catch (Throwable t) {
+                    cancel();
+                    subscriber.onError(t);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -2,25 +2,29 @@ package ci553.happyshop.orderManagement;
 
 import ci553.happyshop.catalogue.Order;
 import ci553.happyshop.catalogue.Product;
-import ci553.happyshop.client.orderTracker.OrderTracker;
-import ci553.happyshop.client.picker.PickerModel;
-import ci553.happyshop.storageAccess.OrderFileManager;
-import ci553.happyshop.utility.StorageLocation;
+import ci553.happyshop.storageAccess.OrderPersistenceWriter;
+import ci553.happyshop.storageAccess.OrderStore;
+import ci553.happyshop.storageAccess.OrderStoreFactory;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>{@code OrderHub} serves as the heart of the ordering system.
@@ -30,129 +34,225 @@ import java.util.stream.Stream;
  * <p> It is the central coordinator responsible for managing all orders. It handles:
  *   Creating and tracking orders
  *   Maintaining and updating the internal order map, <OrderId, OrderState>
- *   Delegating file-related operations (e.g., updating state and moving files) to OrderFileManager class
+ *   Delegating storage (e.g., writing new orders and their state changes) to an OrderStore,
+ *   the order journal or the legacy order files (see OrderStoreFactory)
  *   Loading orders in the "ordered" and "progressing" states from storage during system startup
  *
- * <p> OrderHub also follows the Observer pattern: it notifies registered observers such as OrderTracker
- * and PickerModel whenever the order data changes, keeping the UI and business logic in sync.</p>
+ * <p> OrderHub also follows the Observer pattern: observers such as OrderTracker and PickerModel subscribe
+ * to its OrderEventPublisher and receive a snapshot of all orders, then one OrderEvent per change
+ * (order added, state changed, order removed), keeping the UI and business logic in sync.
+ * Only the change is sent, so the cost of a notification does not grow with the number of orders.</p>
  *
  * <p>As the heart of the ordering system, OrderHub connects customers, pickers, and tracker,
  * managementing logic into a unified workflow.</p>
+ *
+ * <p>OrderHub is thread-safe. Orders are created and advanced from the UI thread and from worker
+ * threads, and collected orders are removed by a scheduler thread, all at the same time:
+ *   the orderMap is a ConcurrentSkipListMap, so it stays sorted by order ID without a lock
+ *   every state change is a compare-and-set on the orderMap (replace(id, expected, new)), so an order
+ *   only moves Ordered -> Progressing -> Collected, and when two threads try the same change only
+ *   one of them wins and writes it to the order store
+ *   each change of an order (the compare-and-set, the index update and the order store write) runs under
+ *   that order's lock, so two changes of the same order reach the indexes and the store in the order
+ *   they were made; the locks are striped by order ID, so changes of different orders rarely wait
+ *   events are published one at a time, each with the order's state at the moment it is published,
+ *   so the last event an observer receives for an order always carries its latest state</p>
+ *
+ * <p>Besides the orderMap, OrderHub keeps an index per state: the sorted IDs of the orders in that
+ * state and their count. The indexes are updated by each change, so the IDs in a state are read
+ * without scanning the other orders (see getOrderIds) and their count in O(1) (see countOrders).</p>
  */
 
 public class OrderHub  {
-    private static OrderHub orderHub; //singleton instance
+    //Singleton pattern: the holder class is only loaded, and the instance created, on the first
+    //call to getOrderHub(); class initialisation makes it safely published to every thread
+    private static class Holder {
+        private static final OrderHub orderHub = new OrderHub();
+    }
 
-    private final Path orderedPath = StorageLocation.orderedPath;
-    private final Path progressingPath = StorageLocation.progressingPath;
-    private final Path collectedPath = StorageLocation.collectedPath;
+    private final OrderStore orderStore = OrderStoreFactory.createOrderStore();
 
-    private TreeMap<Integer,OrderState> orderMap = new TreeMap<>();
-    private TreeMap<Integer,OrderState> OrderedOrderMap = new TreeMap<>();
-    private TreeMap<Integer,OrderState> progressingOrderMap = new TreeMap<>();
+    private final ConcurrentSkipListMap<Long, OrderState> orderMap = new ConcurrentSkipListMap<>();
+
+    //Per-state indexes: the IDs of the orders in each state, and how many there are
+    private final EnumMap<OrderState, NavigableSet<Long>> orderIdsByState = new EnumMap<>(OrderState.class);
+    private final EnumMap<OrderState, AtomicInteger> orderCountByState = new EnumMap<>(OrderState.class);
 
     /**
-     * Two Lists to hold all registered OrderTracker and PickerModel observers.
-     * These observers are notified whenever the orderMap is updated,
-     * but each observer is only notified of the parts of the orderMap that are relevant to them.
-     * - OrderTrackers will be notified of the full orderMap, including all orders (ordered, progressing, collected),
+     * The observers (OrderTrackers and PickerModels) subscribe to the orderEventPublisher.
+     * Each one has its own buffer of happyshop.orders.eventBufferSize events (default 256) and is
+     * sent its events on a virtual thread, so a slow screen does not hold up OrderHub or the other screens.
+     * - OrderTrackers show all orders (ordered, progressing, collected),
      *   but collected orders are shown for a limited time (10 seconds).
-     * - PickerModels will be notified only of orders in the "ordered" or "progressing" states, filtering out collected orders.
+     * - PickerModels only show orders in the "ordered" or "progressing" states, filtering out collected orders.
      */
-    private ArrayList<OrderTracker> orderTrackerList = new ArrayList<>();
-    private ArrayList<PickerModel> pickerModelList = new ArrayList<>();
+    private static final int eventBufferSize = Integer.getInteger("happyshop.orders.eventBufferSize", 256);
+    private final OrderEventPublisher orderEventPublisher = new OrderEventPublisher(eventBufferSize,
+            () -> new TreeMap<>(orderMap),
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("order-events-", 0).factory()));
+
+    private final ReentrantLock notifyLock = new ReentrantLock(); // publishes events one at a time, in order
+
+    //Per-order locks, striped by order ID: an order's change is one step, from its compare-and-set to its store write
+    private static final int ORDER_LOCK_STRIPES = 64;
+    private final ReentrantLock[] orderLocks = new ReentrantLock[ORDER_LOCK_STRIPES];
+    private final AtomicBoolean shutDown = new AtomicBoolean(false);
 
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "order-hub-cleanup");
+        t.setDaemon(true); // must not keep the JVM alive
+        return t;
+    });
 
-    //Singleton pattern
-    private OrderHub() {}
+    private OrderHub() {
+        //every state gets its index up front, so the EnumMaps are never modified afterwards
+        for (OrderState state : OrderState.values()) {
+            orderIdsByState.put(state, new ConcurrentSkipListSet<>());
+            orderCountByState.put(state, new AtomicInteger());
+        }
+        for (int i = 0; i < ORDER_LOCK_STRIPES; i++) {
+            orderLocks[i] = new ReentrantLock();
+        }
+        //orders are written in the background, so they must be flushed however the application ends
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "order-hub-shutdown"));
+        //and a write that fails after checkout has returned must still reach OrderHub
+        if (orderStore instanceof OrderPersistenceWriter orderPersistenceWriter) {
+            orderPersistenceWriter.setFailureListener(new OrderPersistenceWriter.FailureListener() {
+                @Override
+                public void writeFailed(long orderId, boolean creation, IOException cause) {
+                    orderWriteFailed(orderId, creation, cause);
+                }
+
+                @Override
+                public void writeNotSynced(long orderId, IOException cause) {
+                    // the order is in the store, so it stays on offer, it is only not yet safe from a crash
+                    System.err.println("⚠️ Order " + orderId + " was saved but could not be forced to disk: "
+                            + cause.getMessage());
+                }
+            });
+        }
+    }
     public static OrderHub getOrderHub() {
-        if (orderHub == null)
-            orderHub = new OrderHub();
-            return orderHub;
+        return Holder.orderHub;
     }
 
     //Creates a new order using the provided list of products.
     //and also notify picker and orderTracker
     public Order newOrder(ArrayList<Product> trolley) throws IOException, SQLException {
-        int orderId = OrderCounter.generateOrderId(); //get unique orderId
+        long orderId = OrderCounter.generateOrderId(); //get unique orderId
         String orderedDateTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
         //make an Order Object: id, Ordered_state, orderedDateTime, and productsList(trolley)
         Order theOrder = new Order(orderId,OrderState.Ordered,orderedDateTime,trolley);
 
-        //write order details to file for the orderId in orderedPath (ie. orders/ordered)
-        String orderDetail = theOrder.orderDetails();
-        Path path = orderedPath;
-        OrderFileManager.createOrderFile(path, orderId, orderDetail);
+        ReentrantLock orderLock = orderLockOf(orderId);
+        orderLock.lock();
+        try {
+            //write order details to the order store (the journal, or a file in orders/ordered)
+            orderStore.createOrder(orderId, theOrder.orderDetails());
+
+            orderMap.put(orderId, theOrder.getState()); //add the order to orderMap,state is Ordered initially
+            addToIndex(orderId, theOrder.getState());
+            publishChange(orderId, true); //notify OrderTrackers and pickers
+        } finally {
+            orderLock.unlock();
+        }
 
-        orderMap.put(orderId, theOrder.getState()); //add the order to orderMap,state is Ordered initially
-        notifyOrderTrackers(); //notify OrderTrackers
-        notifyPickerModels();//notify pickers
-        
         return theOrder;
     }
 
-    //Registers an OrderTracker to receive updates about changes.
-    public void registerOrderTracker(OrderTracker orderTracker){
-        orderTrackerList.add(orderTracker);
+    //Subscribes an observer (an OrderTracker or a PickerModel) to the order events.
+    //It first receives a Snapshot of all orders, then an event for every change.
+    public void subscribe(Flow.Subscriber<? super OrderEvent> subscriber) {
+        orderEventPublisher.subscribe(subscriber);
     }
-     //Notifies all registered observer_OrderTrackers to update and display the latest orderMap.
-    public void notifyOrderTrackers(){
-        for(OrderTracker orderTracker : orderTrackerList){
-            orderTracker.setOrderMap(orderMap);
+
+    // Publishes the change of an order to all observers.
+    // The state is read again here, under the lock, rather than passed in: when two threads change the same
+    // order, the one that publishes last sends the latest state, even if it made the earlier change.
+    private void publishChange(long orderId, boolean added) {
+        notifyLock.lock();
+        try {
+            OrderState state = orderMap.get(orderId);
+            if (state == null) {
+                orderEventPublisher.publish(new OrderEvent.OrderRemoved(orderId));
+            } else if (added) {
+                orderEventPublisher.publish(new OrderEvent.OrderAdded(orderId, state));
+            } else {
+                orderEventPublisher.publish(new OrderEvent.StateChanged(orderId, state));
+            }
+        } finally {
+            notifyLock.unlock();
         }
     }
 
-    //Registers a PickerModel to receive updates about changes.
-    public void registerPickerModel(PickerModel pickerModel){
-        pickerModelList.add(pickerModel);
+    //Returns the IDs of the orders currently in the specified state, sorted by order ID (a read-only live view)
+    //Used by PickerModel to find the next order to prepare without scanning every order
+    public NavigableSet<Long> getOrderIds(OrderState state) {
+        return Collections.unmodifiableNavigableSet(orderIdsByState.get(state));
+    }
+
+    //Returns how many orders are currently in the specified state
+    public int countOrders(OrderState state) {
+        return orderCountByState.get(state).get();
+    }
+
+    private ReentrantLock orderLockOf(long orderId) {
+        return orderLocks[(int) Math.floorMod(orderId, (long) ORDER_LOCK_STRIPES)];
     }
 
-    //notify all pickers to show orderMap (only ordered and progressing states orders)
-    public void notifyPickerModels(){
-        TreeMap<Integer,OrderState> orderMapForPicker = new TreeMap<>();
-        progressingOrderMap = filterOrdersByState(OrderState.Progressing);
-        OrderedOrderMap = filterOrdersByState(OrderState.Ordered);
-        orderMapForPicker.putAll(progressingOrderMap);
-        orderMapForPicker.putAll(OrderedOrderMap);
-        for(PickerModel pickerModel : pickerModelList){
-            pickerModel.setOrderMap(orderMapForPicker);
+    // The index helpers are called right after the orderMap has changed, under the order's lock
+    private void addToIndex(long orderId, OrderState state) {
+        if (orderIdsByState.get(state).add(orderId)) {
+            orderCountByState.get(state).incrementAndGet();
         }
     }
 
-    // Filters orderMap that match the specified state, a helper class used by notifyPickerModel()
-    private TreeMap<Integer, OrderState> filterOrdersByState(OrderState state) {
-        TreeMap<Integer, OrderState> filteredOrderMap = new TreeMap<>(); // New map to hold filtered orders
-        // Loop through the orderMap and add matching orders to filteredOrders
-        for (Map.Entry<Integer, OrderState> entry : orderMap.entrySet()) {
-            if (entry.getValue() == state) {
-                filteredOrderMap.put(entry.getKey(), entry.getValue());
-            }
+    private void removeFromIndex(long orderId, OrderState state) {
+        if (orderIdsByState.get(state).remove(orderId)) {
+            orderCountByState.get(state).decrementAndGet();
         }
-        return filteredOrderMap;
     }
 
     //Changes the state of the specified order, updates its file, and moves it to the appropriate folder.
     //trigger by PickerModel
-    public void changeOrderStateMoveFile(int orderId, OrderState newState) throws IOException {
-        if(orderMap.containsKey(orderId) && !orderMap.get(orderId).equals(newState))
-        {
-            //change orderState in OrderMap, notify OrderTrackers and pickers
-            orderMap.put(orderId, newState);
-            notifyOrderTrackers();
-            notifyPickerModels();
-
-            //change orderState in order file and move the file to new state folder
-            switch(newState){
-                case OrderState.Progressing:
-                    OrderFileManager.updateAndMoveOrderFile(orderId, newState,orderedPath,progressingPath);
-                    break;
-                case OrderState.Collected:
-                    OrderFileManager.updateAndMoveOrderFile(orderId, newState,progressingPath,collectedPath);
-                    removeCollectedOrder(orderId); //Scheduled removal
-                    break;
+    //Returns false if the order is unknown, is not in the state before newState, or another thread changed it first.
+    public boolean changeOrderStateMoveFile(long orderId, OrderState newState) throws IOException {
+        OrderState expectedState = previousState(newState);
+        if (expectedState == null) {
+            return false;
+        }
+        // The whole change runs under the order's lock: without it, a thread moving the order on to Collected
+        // could update the indexes and the store before the thread that moved it to Progressing had,
+        // leaving the order in two indexes and the store with Progressing as its last state.
+        ReentrantLock orderLock = orderLockOf(orderId);
+        orderLock.lock();
+        try {
+            if (!orderMap.replace(orderId, expectedState, newState)) {
+                return false;
             }
+            //only the thread that won the compare-and-set gets here, so each change is stored exactly once
+            removeFromIndex(orderId, expectedState);
+            addToIndex(orderId, newState);
+            publishChange(orderId, false); //notify OrderTrackers and pickers
+
+            //record the new orderState in the order store (queued in order, by the background writer)
+            orderStore.updateOrderState(orderId, newState);
+        } finally {
+            orderLock.unlock();
         }
+        if (newState == OrderState.Collected) {
+            removeCollectedOrder(orderId); //Scheduled removal
+        }
+        return true;
+    }
+
+    // The only state an order can move to newState from: Ordered -> Progressing -> Collected
+    private static OrderState previousState(OrderState newState) {
+        return switch (newState) {
+            case Progressing -> OrderState.Ordered;
+            case Collected -> OrderState.Progressing;
+            case Ordered -> null; // orders never go back to Ordered
+        };
     }
 
     /**
@@ -163,81 +263,98 @@ public class OrderHub  {
      * "ordered" and "progressing" states.
      * The 10-second delay gives enough time for any final updates, and providing a short window for review of completed orders.
      */
-    private void removeCollectedOrder(int orderId) {
-        if (orderMap.containsKey(orderId)) {
-            // Schedule removal after a few seconds
-            scheduler.schedule(() -> {
-                orderMap.remove(orderId); //remove collected order
-                System.out.println("Order " + orderId + " removed from tracker and OrdersMap.");
-                notifyOrderTrackers();
-            }, 10, TimeUnit.SECONDS );
+    private void removeCollectedOrder(long orderId) {
+        // Schedule removal after a few seconds
+        scheduler.schedule(() -> {
+            ReentrantLock orderLock = orderLockOf(orderId);
+            orderLock.lock();
+            try {
+                if (orderMap.remove(orderId, OrderState.Collected)) { //remove collected order
+                    removeFromIndex(orderId, OrderState.Collected);
+                    System.out.println("Order " + orderId + " removed from tracker and OrdersMap.");
+                    publishChange(orderId, false);
+                }
+            } finally {
+                orderLock.unlock();
+            }
+        }, 10, TimeUnit.SECONDS );
+    }
+
+    /**
+     * Called by the background writer when an order could not be saved.
+     * An order that was never created in the store is withdrawn, so no picker tries to prepare an order
+     * whose details cannot be read; a state change that was not stored is reported.
+     * Handled on the scheduler thread: the writer must not wait for an order lock, whose holder may be
+     * waiting for the writer.
+     */
+    private void orderWriteFailed(long orderId, boolean creation, IOException cause) {
+        System.err.println("⚠️ Order " + orderId + (creation ? " could not be saved" : " state change could not be saved")
+                + ": " + cause.getMessage());
+        if (!creation) {
+            return;
         }
+        scheduler.execute(() -> {
+            ReentrantLock orderLock = orderLockOf(orderId);
+            orderLock.lock();
+            try {
+                OrderState state = orderMap.remove(orderId);
+                if (state != null) {
+                    removeFromIndex(orderId, state);
+                    System.err.println("⚠️ Order " + orderId + " withdrawn from the pickers and trackers");
+                    publishChange(orderId, false);
+                }
+            } finally {
+                orderLock.unlock();
+            }
+        });
     }
 
     // Reads details of an order for display in the picker once they started preparing the order.
-    public String  getOrderDetailForPicker(int orderId) throws IOException {
+    public String  getOrderDetailForPicker(long orderId) throws IOException {
         OrderState state = orderMap.get(orderId);
-        if(state.equals(OrderState.Progressing)) {
-            return OrderFileManager.readOrderFile(progressingPath,orderId);
+        if(state == OrderState.Progressing) {
+            return orderStore.readOrder(orderId);
         }else{
             return "the fuction is only for picker";
         }
     }
 
-    //Initializes the internal order map by loading the uncollected orders from the file system.
+    //Initializes the internal order map by loading the uncollected orders from the order store.
     // Called during system startup by the Main class.
     public void initializeOrderMap(){
-        ArrayList<Integer> orderedIds = orderIdsLoader(orderedPath);
-        ArrayList<Integer> progressingIds = orderIdsLoader(progressingPath);
-        if(orderedIds.size()>0){
-            for(Integer orderId : orderedIds){
-                orderMap.put(orderId, OrderState.Ordered);
+        try {
+            for (Map.Entry<Long, OrderState> entry : orderStore.loadActiveOrders().entrySet()) {
+                if (orderMap.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                    addToIndex(entry.getKey(), entry.getValue());
+                }
             }
+        } catch (IOException e) {
+            System.out.println("Error loading orders, " + e.getMessage());
         }
-        if(progressingIds.size()>0){
-            for(Integer orderId : progressingIds){
-                orderMap.put(orderId, OrderState.Progressing);
-            }
+        //observers that subscribed before the orders were loaded start again from the full map
+        notifyLock.lock();
+        try {
+            orderEventPublisher.publish(new OrderEvent.Snapshot(orderMap));
+        } finally {
+            notifyLock.unlock();
         }
-        notifyOrderTrackers();
-        notifyPickerModels();
         System.out.println("orderMap initilized. "+ orderMap.size() + " orders in total, including:");
-        System.out.println( orderedIds.size() + " Ordered orders, " +progressingIds.size() + " Progressing orders " );
-    }
-
-    // Loads a list of order IDs from the specified directory.
-    // Used internally by initializeOrderMap().
-    private ArrayList<Integer> orderIdsLoader(Path dir) {
-        ArrayList<Integer> orderIds = new ArrayList<>();
-
-        if (Files.exists(dir) && Files.isDirectory(dir)) {
-            try (Stream<Path> fileStream = Files.list(dir)) {
-                // Process the stream without checking it separately
-                List<Path> files = fileStream.filter(Files::isRegularFile).toList();
-
-                if (files.isEmpty()) {
-                    System.out.println(dir + " is empty");
-                } else {
-                    for (Path file : files) {
-                        String fileName = file.getFileName().toString();
-                        if (fileName.endsWith(".txt")) { // Ensure it's a .txt file
-                            try {
-                                int orderId = Integer.parseInt(fileName.substring(0, fileName.lastIndexOf('.')));
-                                orderIds.add(orderId);
-                                System.out.println(orderId);
-                            } catch (NumberFormatException e) {
-                                System.out.println("Invalid file name: " + fileName);
-                            }
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                System.out.println("Error reading " + dir + ", " + e.getMessage());
-            }
-        } else {
-            System.out.println(dir + " does not exist.");
+        System.out.println( countOrders(OrderState.Ordered) + " Ordered orders, "
+                + countOrders(OrderState.Progressing) + " Progressing orders " );
+    }
+
+    //Writes out every order still waiting in the background writer and closes the order store.
+    //Called by EmergencyExit, and by a JVM shutdown hook however else the application ends. Only runs once.
+    public void shutdown() {
+        if (!shutDown.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            orderStore.close(); // OrderPersistenceWriter flushes its queue before closing the store
+            System.out.println("Order store flushed and closed");
+        } catch (IOException e) {
+            System.out.println("Error closing the order store, " + e.getMessage());
         }
-        return orderIds;
     }
 
 }
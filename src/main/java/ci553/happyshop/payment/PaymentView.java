@@ -1,7 +1,9 @@
 package ci553.happyshop.payment;
 
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.TransactionDAO;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -12,9 +14,6 @@ import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.stage.Stage;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-
 /**
  * payment screen for checkout process
  * shows payment methods and handles payment processing
@@ -23,7 +22,7 @@ import java.sql.DriverManager;
 public class PaymentView {
 
     private double totalAmount;
-    private int orderID;
+    private long orderID;
     private PaymentCallback callback;
 
     /**
@@ -40,7 +39,7 @@ public class PaymentView {
      * @param orderID Order being paid for
      * @param callback Called when payment completes
      */
-    public void show(double totalAmount, int orderID, PaymentCallback callback) {
+    public void show(double totalAmount, long orderID, PaymentCallback callback) {
         this.totalAmount = totalAmount;
         this.orderID = orderID;
         this.callback = callback;
@@ -171,14 +170,16 @@ public class PaymentView {
                         ci553.happyshop.audio.SoundEffect.PAYMENT_SUCCESS
                 );
 
-                // Save transaction to database
-                try {
-                    Connection connection = DriverManager.getConnection(DatabaseRWFactory.dbURL);
-                    TransactionDAO transactionDAO = new TransactionDAO(connection);
-                    transactionDAO.recordTransaction(orderID, payment);
-                } catch (Exception ex) {
-                    System.err.println("Failed to record transaction: " + ex.getMessage());
-                }
+                // Save transaction to database in the background, the window never waits for a connection
+                final Payment paidPayment = payment;
+                AsyncDatabaseRW.submit(() -> new TransactionDAO(DatabaseRWFactory.getConnectionPool())
+                        .recordTransaction(orderID, paidPayment), Platform::runLater)
+                        .whenComplete((transactionID, ex) -> {
+                            if (ex != null) {
+                                System.err.println("❌ Failed to record transaction for order " + orderID + ": "
+                                        + AsyncDatabaseRW.causeOf(ex).getMessage());
+                            }
+                        });
 
                 // Call success callback
                 if (callback != null) {
@@ -239,6 +240,13 @@ public class PaymentView {
         scrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
         scrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.AS_NEEDED);
 
+        // Closing the window is the same as cancelling, so the caller can release what it holds for this payment
+        stage.setOnCloseRequest(e -> {
+            if (callback != null) {
+                callback.onPaymentComplete(false, null);
+            }
+        });
+
         Scene scene = new Scene(scrollPane, 450, 600);
         stage.setScene(scene);
         stage.show();
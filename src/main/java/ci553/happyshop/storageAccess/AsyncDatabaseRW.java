@@ -0,0 +1,169 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * AsyncDatabaseRW runs DatabaseRW calls in the background and returns CompletableFutures,
+ * so that no JDBC call (or wait for a connection or product lock) happens on the JavaFX thread.
+ *
+ * Responsibilities:
+ * - Running each call on its own virtual thread, shared by every AsyncDatabaseRW in the JVM.
+ * - Bounding how many calls reach the database at once (happyshop.db.async.maxConcurrency, default 10
+ *   to match the connection pool size; more would only queue inside the pool).
+ * - Completing the returned futures on the completion executor given to the constructor. The clients pass
+ *   Platform::runLater, so thenAccept()/whenComplete() callbacks can update the UI directly.
+ *
+ * Usage:
+ * <pre>
+ *     asyncDatabaseRW.searchByProductId(id).whenComplete((product, ex) -> { ... update the view ... });
+ * </pre>
+ *
+ * A failed call completes the future exceptionally with a CompletionException wrapping the original
+ * exception (eg SQLException).
+ */
+
+public class AsyncDatabaseRW {
+    private static final int maxConcurrency = Integer.getInteger("happyshop.db.async.maxConcurrency", 10);
+    private static final ExecutorService dbExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("db-async-", 0).factory());
+    private static final Semaphore permits = new Semaphore(maxConcurrency, true); // fair, first come first served
+
+    private final DatabaseRW databaseRW;
+    private final Executor completionExecutor;
+
+    /**
+     * A database call that may throw, eg () -> databaseRW.searchProduct(keyword)
+     */
+    @FunctionalInterface
+    public interface DatabaseTask<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * @param databaseRW          the DatabaseRW that does the work
+     * @param completionExecutor  where the returned futures are completed, eg Platform::runLater
+     */
+    public AsyncDatabaseRW(DatabaseRW databaseRW, Executor completionExecutor) {
+        this.databaseRW = databaseRW;
+        this.completionExecutor = completionExecutor;
+    }
+
+    /**
+     * Runs any database task on a virtual thread, within the concurrency limit,
+     * and completes the returned future on the completion executor.
+     * Used for calls that are not on DatabaseRW, eg AuthenticationManager.login().
+     */
+    public static <T> CompletableFuture<T> submit(DatabaseTask<T> task, Executor completionExecutor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        dbExecutor.execute(() -> {
+            T result = null;
+            Throwable failure = null;
+            try {
+                permits.acquire();
+                try {
+                    result = task.run();
+                } finally {
+                    permits.release();
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+            T finalResult = result;
+            Throwable finalFailure = failure;
+            completionExecutor.execute(() -> {
+                if (finalFailure == null) {
+                    future.complete(finalResult);
+                } else {
+                    future.completeExceptionally(new CompletionException(finalFailure));
+                }
+            });
+        });
+        return future;
+    }
+
+    public <T> CompletableFuture<T> submit(DatabaseTask<T> task) {
+        return submit(task, completionExecutor);
+    }
+
+    public CompletableFuture<ArrayList<Product>> searchProduct(String keyword) {
+        return submit(() -> databaseRW.searchProduct(keyword));
+    }
+
+    public CompletableFuture<ProductPage> searchProductPage(String keyword, int offset, int pageSize,
+                                                           ProductSortKey sortKey) {
+        return submit(() -> databaseRW.searchProductPage(keyword, offset, pageSize, sortKey));
+    }
+
+    public CompletableFuture<Product> searchByProductId(String productId) {
+        return submit(() -> databaseRW.searchByProductId(productId));
+    }
+
+    public CompletableFuture<Map<String, Product>> searchByProductIds(Collection<String> productIds) {
+        return submit(() -> databaseRW.searchByProductIds(productIds));
+    }
+
+    public CompletableFuture<ArrayList<Product>> purchaseStocks(ArrayList<Product> proList) {
+        return submit(() -> databaseRW.purchaseStocks(proList));
+    }
+
+    public CompletableFuture<Void> updateProduct(String id, String des, double price, String imageName, int stock) {
+        return submit(() -> {
+            databaseRW.updateProduct(id, des, price, imageName, stock);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteProduct(String id) {
+        return submit(() -> {
+            databaseRW.deleteProduct(id);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> insertNewProduct(String id, String des, double price, String image, int stock) {
+        return submit(() -> {
+            databaseRW.insertNewProduct(id, des, price, image, stock);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> isProIdAvailable(String productId) {
+        return submit(() -> databaseRW.isProIdAvailable(productId));
+    }
+
+    //hold the trolley's stock while the customer pays, see StockReservationManager
+    public CompletableFuture<StockReservationManager.ReservationResult> reserveStocks(ArrayList<Product> proList) {
+        return submit(() -> StockReservationManager.getInstance().reserve(databaseRW, proList));
+    }
+
+    public CompletableFuture<ArrayList<Product>> purchaseReserved(StockReservationManager.Reservation reservation) {
+        return submit(() -> StockReservationManager.getInstance().purchase(databaseRW, reservation));
+    }
+
+    public CompletableFuture<Void> releaseReservation(StockReservationManager.Reservation reservation) {
+        return submit(() -> {
+            StockReservationManager.getInstance().release(reservation);
+            return null;
+        });
+    }
+
+    //the wrapped, blocking DatabaseRW, only for code that is already off the JavaFX thread
+    public DatabaseRW getDatabaseRW() {
+        return databaseRW;
+    }
+
+    //the original exception of a failed call, eg the SQLException inside a CompletionException
+    public static Throwable causeOf(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+}
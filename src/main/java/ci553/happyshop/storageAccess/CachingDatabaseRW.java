@@ -0,0 +1,126 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CachingDatabaseRW is a decorator that adds a read-through product cache in front of any DatabaseRW.
+ *
+ * - searchByProductId() is answered from the cache when possible, and only goes to the wrapped
+ *   DatabaseRW (eg DerbyRW) on a miss.
+ * - purchaseStocks(), updateProduct(), deleteProduct() and insertNewProduct() are passed straight to the
+ *   wrapped DatabaseRW and, once they succeed, remove the affected products from the cache.
+ *
+ * The cache is shared by every CachingDatabaseRW in the JVM, so a change made through one client
+ * (eg the warehouse) is seen by all other clients (eg every customer till) on their next lookup.
+ *
+ * Created by DatabaseRWFactory when product caching is enabled.
+ */
+
+public class CachingDatabaseRW implements DatabaseRW {
+    private static final ProductCache sharedCache = new ProductCache(
+            Integer.getInteger("happyshop.cache.maxSize", 1000),
+            Long.getLong("happyshop.cache.ttlMillis", 30_000));
+
+    private final DatabaseRW delegate;
+
+    public CachingDatabaseRW(DatabaseRW delegate) {
+        this.delegate = delegate;
+    }
+
+    //Cache metrics (size, hits, misses, hit rate ...) for all instances
+    public static ProductCache.CacheStats getCacheStats() {
+        return sharedCache.getStats();
+    }
+
+    public static ProductCache getSharedCache() {
+        return sharedCache;
+    }
+
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        return delegate.searchProduct(keyword);
+    }
+
+    public ProductPage searchProductPage(String keyword, int offset, int pageSize, ProductSortKey sortKey)
+            throws SQLException {
+        return delegate.searchProductPage(keyword, offset, pageSize, sortKey);
+    }
+
+    public Product searchByProductId(String productId) throws SQLException {
+        ProductCache.Lookup cached = sharedCache.get(productId);
+        if (cached != null) {
+            return cached.product();
+        }
+        long generation = sharedCache.currentGeneration(); // read before loading, see ProductCache.put()
+        Product product = delegate.searchByProductId(productId);
+        sharedCache.put(productId, product, generation);
+        return product;
+    }
+
+    //cached products are served from the cache, the rest are loaded with one batch lookup and cached
+    public Map<String, Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        Map<String, Product> products = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String productId : new LinkedHashSet<>(productIds)) {
+            ProductCache.Lookup cached = sharedCache.get(productId);
+            if (cached == null) {
+                missing.add(productId);
+                products.put(productId, null); // keeps the requested order, filled in below
+            } else if (cached.product() != null) {
+                products.put(productId, cached.product());
+            }
+        }
+        if (!missing.isEmpty()) {
+            long generation = sharedCache.currentGeneration(); // read before loading, see ProductCache.put()
+            Map<String, Product> loaded = delegate.searchByProductIds(missing);
+            for (String productId : missing) {
+                Product product = loaded.get(productId);
+                sharedCache.put(productId, product, generation); // null caches "not found"
+                if (product == null) {
+                    products.remove(productId);
+                } else {
+                    products.put(productId, product);
+                }
+            }
+        }
+        return products;
+    }
+
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+        ArrayList<Product> insufficientProducts = delegate.purchaseStocks(proList);
+        if (insufficientProducts.isEmpty()) { // stock was reduced for every product in the list
+            List<String> productIds = new ArrayList<>();
+            for (Product product : proList) {
+                productIds.add(product.getProductId());
+            }
+            sharedCache.invalidateAll(productIds);
+        }
+        return insufficientProducts;
+    }
+
+    public void updateProduct(String id, String des, double price, String imageName, int stock) throws SQLException {
+        delegate.updateProduct(id, des, price, imageName, stock);
+        sharedCache.invalidate(id);
+    }
+
+    public void deleteProduct(String id) throws SQLException {
+        delegate.deleteProduct(id);
+        sharedCache.invalidate(id);
+    }
+
+    public void insertNewProduct(String id, String des, double price, String image, int stock) throws SQLException {
+        delegate.insertNewProduct(id, des, price, image, stock);
+        sharedCache.invalidate(id); // drop a cached "not found"
+    }
+
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        return delegate.isProIdAvailable(productId);
+    }
+}
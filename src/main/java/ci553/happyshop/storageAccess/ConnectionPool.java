@@ -0,0 +1,348 @@
+package ci553.happyshop.storageAccess;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of JDBC connections shared by all DatabaseRW instances.
+ *
+ * Opening a Derby connection is far more expensive than running a single-row query,
+ * so instead of calling DriverManager.getConnection() for every search, connections are
+ * opened once, handed out by borrow(), and returned to the pool when the caller closes
+ * the PooledConnection (works with try-with-resources).
+ *
+ * Behaviour:
+ * - At most maxSize connections are open at once; a borrower waits up to borrowTimeoutMillis
+ *   for one to be returned before an SQLException is thrown.
+ * - minSize connections are opened up front and are never evicted.
+ * - Connections idle for longer than idleTimeoutMillis are closed by a background evictor
+ *   (down to minSize).
+ * - Every idle connection is validated before it is handed out; broken connections are
+ *   discarded and replaced.
+ * - Each connection carries an LRU cache of up to statementCacheSize prepared statements.
+ *
+ * The pool is created and owned by DatabaseRWFactory, see DatabaseRWFactory.getConnectionPool().
+ */
+
+public class ConnectionPool {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String dbURL;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final Deque<PooledConnection> idleConnections = new ArrayDeque<>(); // most recently used first
+    private final Lock lock = new ReentrantLock();
+    private final Condition connectionReturned = lock.newCondition();
+    private int openCount = 0; // idle + active connections, guarded by lock
+    private boolean closed = false;
+
+    private final ScheduledExecutorService evictor;
+
+    // statistics
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder invalidCount = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    /**
+     * @param dbURL               the JDBC URL each connection is opened with
+     * @param minSize             number of connections kept open even when idle
+     * @param maxSize             maximum number of connections open at the same time
+     * @param idleTimeoutMillis   idle connections above minSize are closed after this time
+     * @param borrowTimeoutMillis how long borrow() waits for a free connection
+     * @param statementCacheSize  prepared statements cached per connection
+     */
+    public ConnectionPool(String dbURL, int minSize, int maxSize, long idleTimeoutMillis,
+                          long borrowTimeoutMillis, int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.dbURL = dbURL;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+
+        fillToMinimum();
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true); // must not keep the JVM alive
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none is idle and the pool is not full.
+     * The caller must close the returned PooledConnection to give it back.
+     */
+    public PooledConnection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+
+        while (true) {
+            PooledConnection candidate = null;
+            boolean mayOpenNew = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Connection pool is closed");
+                    }
+                    candidate = idleConnections.pollFirst();
+                    if (candidate != null) break;
+                    if (openCount < maxSize) {
+                        openCount++; // reserve a slot, the connection is opened outside the lock
+                        mayOpenNew = true;
+                        break;
+                    }
+                    if (remainingNanos <= 0) {
+                        timeoutCount.increment();
+                        throw new SQLException("Timed out after " + borrowTimeoutMillis
+                                + " ms waiting for a database connection (" + maxSize + " in use)");
+                    }
+                    try {
+                        remainingNanos = connectionReturned.awaitNanos(remainingNanos);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", e);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (mayOpenNew) {
+                try {
+                    candidate = openConnection();
+                } catch (SQLException e) {
+                    discardSlot();
+                    throw e;
+                }
+            } else if (!isValid(candidate)) {
+                invalidCount.increment();
+                closeQuietly(candidate);
+                discardSlot();
+                continue; // try the next idle connection
+            }
+
+            recordWait(System.nanoTime() - start);
+            candidate.markBorrowed();
+            return candidate;
+        }
+    }
+
+    //called by PooledConnection.close()
+    void release(PooledConnection pc) {
+        boolean reusable;
+        try {
+            reusable = !pc.getConnection().isClosed();
+            if (reusable) resetState(pc.getConnection());
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        if (!reusable) {
+            closeQuietly(pc);
+            discardSlot();
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (closed) {
+                closeQuietly(pc);
+                openCount--;
+                return;
+            }
+            pc.touch();
+            idleConnections.offerFirst(pc);
+            connectionReturned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the pool statistics.
+     */
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            int idle = idleConnections.size();
+            long borrows = borrowCount.sum();
+            double avgWaitMillis = borrows == 0 ? 0 : totalWaitNanos.sum() / 1_000_000.0 / borrows;
+            return new PoolStats(openCount - idle, idle, openCount, maxSize, borrows,
+                    avgWaitMillis, maxWaitNanos.get() / 1_000_000.0, timeoutCount.sum(),
+                    createdCount.sum(), evictedCount.sum(), invalidCount.sum(),
+                    statementCacheHits.sum(), statementCacheMisses.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Closes all idle connections and stops the evictor. Active connections are closed when they are returned.
+    public void close() {
+        evictor.shutdownNow();
+        lock.lock();
+        try {
+            closed = true;
+            for (PooledConnection pc : idleConnections) {
+                closeQuietly(pc);
+                openCount--;
+            }
+            idleConnections.clear();
+            connectionReturned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        Connection conn = DriverManager.getConnection(dbURL);
+        createdCount.increment();
+        StatementCache cache = new StatementCache(conn, statementCacheSize, statementCacheHits, statementCacheMisses);
+        return new PooledConnection(conn, this, cache);
+    }
+
+    private void fillToMinimum() {
+        for (int i = 0; i < minSize; i++) {
+            try {
+                PooledConnection pc = openConnection();
+                lock.lock();
+                try {
+                    openCount++;
+                    idleConnections.offerLast(pc);
+                } finally {
+                    lock.unlock();
+                }
+            } catch (SQLException e) {
+                System.out.println("Connection pool could not pre-open connections: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    //Closes connections that have been idle for too long, keeping at least minSize open.
+    private void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Iterator<PooledConnection> it = idleConnections.descendingIterator(); // least recently used first
+            while (it.hasNext() && openCount > minSize) {
+                PooledConnection pc = it.next();
+                if (now - pc.getLastUsedMillis() < idleTimeoutMillis) break;
+                it.remove();
+                openCount--;
+                evictedCount.increment();
+                closeQuietly(pc);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isValid(PooledConnection pc) {
+        try {
+            return pc.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // Undoes anything a borrower may have left behind so the next borrower gets a clean connection.
+    private void resetState(Connection conn) throws SQLException {
+        if (!conn.getAutoCommit()) {
+            conn.rollback(); // discard any uncommitted work
+            conn.setAutoCommit(true);
+        }
+        conn.clearWarnings();
+    }
+
+    private void discardSlot() {
+        lock.lock();
+        try {
+            openCount--;
+            connectionReturned.signal(); // a waiter may now open a new connection
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        borrowCount.increment();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    private static void closeQuietly(PooledConnection pc) {
+        try {
+            pc.getStatementCache().clear();
+            pc.getConnection().close();
+        } catch (SQLException e) {
+            System.out.println("Failed to close pooled connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * An immutable snapshot of the pool statistics.
+     *
+     * @param active        connections currently borrowed
+     * @param idle          connections waiting in the pool
+     * @param open          active + idle
+     * @param maxSize       the configured upper bound
+     * @param borrowCount   successful borrow() calls
+     * @param avgWaitMillis average time spent inside borrow()
+     * @param maxWaitMillis longest time spent inside borrow()
+     * @param timeoutCount  borrow() calls that gave up waiting
+     * @param createdCount  connections opened since start-up
+     * @param evictedCount  idle connections closed by the evictor
+     * @param invalidCount  idle connections discarded because validation failed
+     * @param statementCacheHits   prepareStatement() calls served from a connection's statement cache
+     * @param statementCacheMisses prepareStatement() calls that had to prepare a new statement
+     */
+    public record PoolStats(int active, int idle, int open, int maxSize, long borrowCount,
+                            double avgWaitMillis, double maxWaitMillis, long timeoutCount,
+                            long createdCount, long evictedCount, long invalidCount,
+                            long statementCacheHits, long statementCacheMisses) {
+
+        public double statementCacheHitRate() {
+            long total = statementCacheHits + statementCacheMisses;
+            return total == 0 ? 0 : (double) statementCacheHits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Pool[active=%d, idle=%d, open=%d/%d, borrows=%d, avgWait=%.3fms, maxWait=%.3fms, " +
+                            "timeouts=%d, created=%d, evicted=%d, invalid=%d, stmtCache=%d hits/%d misses]",
+                    active, idle, open, maxSize, borrowCount, avgWaitMillis, maxWaitMillis,
+                    timeoutCount, createdCount, evictedCount, invalidCount,
+                    statementCacheHits, statementCacheMisses);
+        }
+    }
+}
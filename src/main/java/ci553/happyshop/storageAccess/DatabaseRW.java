@@ -4,6 +4,11 @@ import ci553.happyshop.catalogue.Product;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * The DatabaseRW interface defines the contract for interacting with the product database.
@@ -37,6 +42,62 @@ public interface DatabaseRW {
      */
     ArrayList<Product> searchProduct(String keyword) throws SQLException;
 
+    /**
+     * Searches like searchProduct(), but returns only one page of the matches so that a short keyword
+     * on a large catalogue does not materialise thousands of products at once.
+     *
+     * The default implementation sorts and slices the full searchProduct() result;
+     * implementations that can page in the database or an index should override it.
+     *
+     * @param keyword  the keyword to search for
+     * @param offset   number of matches to skip (use ProductPage.nextOffset() of the previous page)
+     * @param pageSize maximum number of products in the page
+     * @param sortKey  the order of the matches
+     * @return the requested page, with the total number of matches
+     */
+    default ProductPage searchProductPage(String keyword, int offset, int pageSize, ProductSortKey sortKey)
+            throws SQLException {
+        ArrayList<Product> all = searchProduct(keyword);
+        all.sort(comparatorFor(sortKey));
+        int from = Math.min(Math.max(offset, 0), all.size());
+        int to = Math.min(from + Math.max(pageSize, 0), all.size());
+        return new ProductPage(new ArrayList<>(all.subList(from, to)), from, all.size());
+    }
+
+    /**
+     * Streams every product matching the keyword to the consumer, one page at a time,
+     * so callers can start processing before the whole result has been read.
+     *
+     * @return the number of products passed to the consumer
+     */
+    default int streamSearchProduct(String keyword, ProductSortKey sortKey, int pageSize,
+                                    Consumer<Product> consumer) throws SQLException {
+        int offset = 0;
+        int delivered = 0;
+        ProductPage page;
+        do {
+            page = searchProductPage(keyword, offset, pageSize, sortKey);
+            for (Product product : page.products()) {
+                consumer.accept(product);
+                delivered++;
+            }
+            offset = page.nextOffset();
+        } while (page.hasMore() && !page.products().isEmpty());
+        return delivered;
+    }
+
+    // Comparator matching a ProductSortKey, ties are broken by product ID
+    static Comparator<Product> comparatorFor(ProductSortKey sortKey) {
+        Comparator<Product> byId = Comparator.comparing(Product::getProductId);
+        return switch (sortKey) {
+            case PRODUCT_ID -> byId;
+            case DESCRIPTION -> Comparator.comparing(Product::getProductDescription,
+                    String.CASE_INSENSITIVE_ORDER).thenComparing(byId);
+            case UNIT_PRICE -> Comparator.comparingDouble(Product::getUnitPrice).thenComparing(byId);
+            case STOCK -> Comparator.comparingInt(Product::getStockQuantity).thenComparing(byId);
+        };
+    }
+
     /**
      * Searches for a product by its unique product ID.
      * @param productId the product ID
@@ -44,6 +105,27 @@ public interface DatabaseRW {
      */
     Product searchByProductId(String productId) throws SQLException;
 
+    /**
+     * Searches for several products by ID at once, eg every product in a trolley.
+     *
+     * The default implementation calls searchByProductId() once per ID;
+     * implementations should override it to resolve all IDs in as few round-trips as possible.
+     *
+     * @param productIds the product IDs, duplicates are ignored
+     * @return the products found, keyed by product ID in the order of productIds; IDs not found are left out
+     */
+    default Map<String, Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        Map<String, Product> products = new LinkedHashMap<>();
+        for (String productId : productIds) {
+            if (products.containsKey(productId)) continue;
+            Product product = searchByProductId(productId);
+            if (product != null) {
+                products.put(productId, product);
+            }
+        }
+        return products;
+    }
+
     /**
      * Attempts to purchase (reduce stocks of) the given list of products.
      * Behavior:
@@ -1,12 +1,26 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.systemSetup.SetDatabase;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+
 /**
  * The DatabaseRWFactory class centralizes database configuration and object creation.
  * It acts as a factory pattern to provide flexible instantiation of the DatabaseRW interface.
  *
  * Responsibilities:
  * - Holds the database URL used to connect to the database.
- * - Creates instances of DatabaseRW (e.g., DerbyRW, MySQLRW, SQLiteRW).
+ * - Selects the backend with -Dhappyshop.db.backend:
+ *     derby         (default) the Derby database on disk, jdbc:derby:happyShopDB
+ *     derby-memory  a Derby database in memory, jdbc:derby:memory:happyShopDB, created with the sample data
+ *                   on first use and gone when the JVM exits
+ *     memory        no database for products at all, an InMemoryRW shared by all clients
+ *                   (users and transactions still use the Derby database on disk)
+ * - Owns the ConnectionPool and ProductSearchIndex shared by all DatabaseRW instances.
+ * - Creates instances of DatabaseRW (e.g., DerbyRW, MySQLRW, SQLiteRW), timed by StorageMetrics.
  *
  * Benefits:
  * - Database Abstraction: Keeps the system decoupled from specific database implementations.
@@ -22,13 +36,136 @@ package ci553.happyshop.storageAccess;
 
 public class DatabaseRWFactory {
 
-    public static String dbURL = "jdbc:derby:happyShopDB"; //or other database URL in the future (eg MySQLRW or SQLiteRW)
+    private static final String backend = System.getProperty("happyshop.db.backend", "derby");
+
+    public static String dbURL = backend.equals("derby-memory")
+            ? "jdbc:derby:memory:happyShopDB"
+            : "jdbc:derby:happyShopDB"; //or other database URL in the future (eg MySQLRW or SQLiteRW)
+
+    /**
+     * Pool settings, can be overridden on the command line, eg -Dhappyshop.pool.maxSize=20
+     */
+    private static final int poolMinSize = Integer.getInteger("happyshop.pool.minSize", 2);
+    private static final int poolMaxSize = Integer.getInteger("happyshop.pool.maxSize", 10);
+    private static final long poolIdleTimeoutMillis = Long.getLong("happyshop.pool.idleTimeoutMillis", 60_000);
+    private static final long poolBorrowTimeoutMillis = Long.getLong("happyshop.pool.borrowTimeoutMillis", 5_000);
+    private static final int statementCacheSize = Integer.getInteger("happyshop.pool.statementCacheSize", 32);
+
+    private static ConnectionPool connectionPool; // created on first use, shared by all DatabaseRW instances
+    private static ProductSearchIndex productSearchIndex; // built on first use, shared by all DatabaseRW instances
+    private static InMemoryRW inMemoryRW; // the "memory" backend, created on first use and shared by all clients
+
+    // Bring the schema up to date when the pool is created, disable with -Dhappyshop.db.migrate=false
+    private static final boolean migrateOnStartup =
+            Boolean.parseBoolean(System.getProperty("happyshop.db.migrate", "true"));
+
+    // Commit concurrent purchases together, enable with -Dhappyshop.db.groupCommit=true (see GroupCommitter)
+    private static final boolean groupCommitEnabled =
+            Boolean.parseBoolean(System.getProperty("happyshop.db.groupCommit", "false"));
+    private static final int groupCommitMaxBatch = Integer.getInteger("happyshop.groupCommit.maxBatch", 32);
+    private static final long groupCommitWindowMillis = Long.getLong("happyshop.groupCommit.windowMillis", 2);
+    private static GroupCommitter groupCommitter; // created on first use when enabled
+
+    // Wrap each DatabaseRW in a CachingDatabaseRW, disable with -Dhappyshop.db.cache=false
+    private static final boolean productCacheEnabled =
+            Boolean.parseBoolean(System.getProperty("happyshop.db.cache", "true"));
+
+    /**
+     * Returns the connection pool shared by the whole application, creating it
+     * (and migrating the schema, see SchemaMigrator) on first use.
+     */
+    public static synchronized ConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            if (backend.equals("derby-memory")) {
+                createMemoryDatabase();
+            }
+            connectionPool = new ConnectionPool(dbURL, poolMinSize, poolMaxSize,
+                    poolIdleTimeoutMillis, poolBorrowTimeoutMillis, statementCacheSize);
+            if (migrateOnStartup) {
+                try {
+                    SchemaMigrator.migrate(connectionPool);
+                } catch (SQLException e) {
+                    // the clients still start, a failed migration is retried on the next start
+                    System.out.println("Failed to migrate the database schema: " + e.getMessage());
+                }
+            }
+        }
+        return connectionPool;
+    }
+
+    // A jdbc:derby:memory: database starts empty, create it with the same tables and data as SetDatabase
+    private static void createMemoryDatabase() {
+        try (Connection connection = DriverManager.getConnection(dbURL + ";create=true")) {
+            SetDatabase.createTablesWithSampleData(connection);
+            System.out.println("In-memory Derby database created: " + dbURL);
+        } catch (SQLException e) {
+            System.out.println("Failed to create the in-memory Derby database: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the in-memory product description index, building it from the database on first use.
+     * Returns null if it cannot be built: DerbyRW then searches names with SQL LIKE, and the build is
+     * tried again for the next DatabaseRW.
+     */
+    public static synchronized ProductSearchIndex getProductSearchIndex() {
+        if (productSearchIndex == null) {
+            try {
+                productSearchIndex = ProductSearchIndex.build(getConnectionPool());
+            } catch (SQLException e) {
+                System.out.println("Failed to build the product search index, searching the database instead: "
+                        + e.getMessage());
+                return null;
+            }
+        }
+        return productSearchIndex;
+    }
 
     /**
-     * Creates an instance of DatabaseRW (currently returning DerbyRW, but can be modified to return other implementations).
+     * Creates an instance of DatabaseRW (DerbyRW, or the shared InMemoryRW for the "memory" backend).
+     * Unless product caching is disabled, the DerbyRW is wrapped in a CachingDatabaseRW.
+     * Unless metrics are disabled, the result is wrapped in a TimedDatabaseRW (see StorageMetrics).
      */
     public static DatabaseRW createDatabaseRW() {
-        return new DerbyRW(); // or other database implementations in the future (eg MySQLRW or SQLiteRW)
+        DatabaseRW databaseRW;
+        if (backend.equals("memory")) {
+            databaseRW = getInMemoryRW(); // already in memory, nothing to cache
+        } else {
+            databaseRW = new DerbyRW(getConnectionPool(), getProductSearchIndex(), getGroupCommitter()); // or other database implementations in the future (eg MySQLRW or SQLiteRW)
+            if (productCacheEnabled) {
+                databaseRW = new CachingDatabaseRW(databaseRW);
+            }
+        }
+        if (StorageMetrics.getInstance().isEnabled()) {
+            databaseRW = new TimedDatabaseRW(databaseRW);
+        }
+        return databaseRW;
+    }
+
+    /**
+     * Returns the purchase group committer shared by all DerbyRW instances, or null if group commit is disabled.
+     */
+    public static synchronized GroupCommitter getGroupCommitter() {
+        if (groupCommitEnabled && groupCommitter == null) {
+            groupCommitter = new GroupCommitter(getConnectionPool(), groupCommitMaxBatch, groupCommitWindowMillis);
+        }
+        return groupCommitter;
+    }
+
+    private static synchronized InMemoryRW getInMemoryRW() {
+        if (inMemoryRW == null) {
+            inMemoryRW = InMemoryRW.withSampleProducts();
+            System.out.println("Using the in-memory product backend: " + inMemoryRW.size() + " products");
+        }
+        return inMemoryRW;
+    }
+
+    /**
+     * Creates a DatabaseRW (as createDatabaseRW) wrapped in an AsyncDatabaseRW, for the UI clients.
+     * @param completionExecutor where the returned futures complete, the clients pass Platform::runLater
+     */
+    public static AsyncDatabaseRW createAsyncDatabaseRW(Executor completionExecutor) {
+        return new AsyncDatabaseRW(createDatabaseRW(), completionExecutor);
     }
 }
 
@@ -4,8 +4,13 @@ import ci553.happyshop.catalogue.Product;
 
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 /** ProductTable definition
  * "CREATE TABLE ProductTable(" +
@@ -16,11 +21,34 @@ import java.util.concurrent.locks.ReentrantLock;
  *         "inStock INT," +
  *         "CHECK (inStock >= 0)" +
  *           ")",
+ * plus, from SchemaMigrator version 2, the indexed column
+ *         "descriptionLower VARCHAR(100) GENERATED ALWAYS AS (LOWER(description))"
+ * which name searches use when it exists; on a database without it (-Dhappyshop.db.migrate=false,
+ * or a failed migration) they use LOWER(description) instead.
  */
 
 public class DerbyRW implements DatabaseRW {
-    private static String dbURL = DatabaseRWFactory.dbURL; // Shared by all instances
-    private  Lock lock = new ReentrantLock(); // Each instance has its own lock
+    private final ConnectionPool connectionPool; // Shared by all instances, owned by DatabaseRWFactory
+    private final ProductSearchIndex searchIndex; // Shared by all instances, owned by DatabaseRWFactory; null if it could not be built
+    private final GroupCommitter groupCommitter; // Shared by all instances, null unless group commit is enabled
+    private volatile String lowerDescription; // descriptionLower, or LOWER(description) if the column is missing; null until checked
+    // Per-product lock stripes shared by every DatabaseRW instance in the JVM
+    private static final ProductLockManager productLocks = ProductLockManager.getInstance();
+
+    // Products are loaded by ID in fixed-size chunks so the IN-list SQL text (and its cached statement) never changes
+    private static final int ID_CHUNK_SIZE = 50;
+    private static final String selectByIdsSql = "SELECT * FROM ProductTable WHERE productID IN ("
+            + String.join(", ", Collections.nCopies(ID_CHUNK_SIZE, "?")) + ")";
+
+    public DerbyRW(ConnectionPool connectionPool, ProductSearchIndex searchIndex) {
+        this(connectionPool, searchIndex, null);
+    }
+
+    public DerbyRW(ConnectionPool connectionPool, ProductSearchIndex searchIndex, GroupCommitter groupCommitter) {
+        this.connectionPool = connectionPool;
+        this.searchIndex = searchIndex;
+        this.groupCommitter = groupCommitter;
+    }
 
     //search product by product Id or name, return a list of products or null
     //search by Id at first, if get null, search by product name
@@ -49,8 +77,8 @@ public class DerbyRW implements DatabaseRW {
         Product product = null;
         String query = "SELECT * FROM ProductTable WHERE productID = ?";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement pstmt = pc.prepareStatement(query); // cached on the connection, not closed here
             // Set the productId parameter
             pstmt.setString(1, proId);
 
@@ -71,30 +99,200 @@ public class DerbyRW implements DatabaseRW {
 
     //helper method
     //search  by product name, return a List of products or null
+    //the matching IDs come from the in-memory ProductSearchIndex, then only those rows are read by primary key
+    //without the index, the database is searched with LIKE instead
     private ArrayList<Product> searchByProName(String name) {
         ArrayList<Product> productList = new ArrayList<>();
-        String query = "SELECT * FROM ProductTable WHERE LOWER(description) LIKE LOWER(?)";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        try {
+            if (searchIndex == null) {
+                productList = loadPageOrderedBy(name, ProductSortKey.PRODUCT_ID, 0, Integer.MAX_VALUE);
+            } else {
+                List<String> matchingIds = searchIndex.search(name); // sorted by product ID
+                productList = loadProductsByIds(matchingIds); // Add all matching products to list
+            }
 
-            stmt.setString(1, "%" + name.toLowerCase() + "%");
+            if (productList.isEmpty()) {
+                System.out.println("Product " + name + " not found.");
+            }
 
-            try (ResultSet rs = stmt.executeQuery()) {
+        } catch (SQLException e) {
+            System.out.println("Database query error, search by name: " + name + " " + e.getMessage());
+        }
+
+        return productList; // could be empty if no matches
+    }
+
+    //search product by product Id or name, returning one page of the matches
+    //an exact ID match is the whole result (as in searchProduct), otherwise:
+    //- ID and description order come from the search index, then only the page's rows are read by primary key
+    //- price and stock order need the column values, so the database sorts and returns just the page (OFFSET/FETCH)
+    //  and counts the matches too: a page and a total from two different sources could disagree
+    //- without the search index every order is read from the database in that way
+    @Override
+    public ProductPage searchProductPage(String keyword, int offset, int pageSize, ProductSortKey sortKey)
+            throws SQLException {
+        Product product = searchByProductId(keyword);
+        if (product != null) {
+            ArrayList<Product> productList = new ArrayList<>();
+            if (offset <= 0 && pageSize > 0) {
+                productList.add(product);
+            }
+            return new ProductPage(productList, Math.min(Math.max(offset, 0), 1), 1);
+        }
+        if (searchIndex == null || sortKey == ProductSortKey.UNIT_PRICE || sortKey == ProductSortKey.STOCK) {
+            return searchPageFromDatabase(keyword, offset, pageSize, sortKey);
+        }
+
+        List<String> matchingIds = searchIndex.search(keyword, sortKey);
+        int total = matchingIds.size();
+        int from = Math.min(Math.max(offset, 0), total);
+        int to = Math.min(from + Math.max(pageSize, 0), total);
+        if (from == to) {
+            return new ProductPage(new ArrayList<>(), from, total);
+        }
+
+        ArrayList<Product> productList = loadProductsByIds(matchingIds.subList(from, to));
+        System.out.println("Search " + keyword + ": " + productList.size() + " of " + total
+                + " products from offset " + from + " by " + sortKey);
+        return new ProductPage(productList, from, total);
+    }
+
+    //helper method
+    //one page of the products whose description contains the keyword, and the number of them, both from the database
+    private ProductPage searchPageFromDatabase(String keyword, int offset, int pageSize, ProductSortKey sortKey)
+            throws SQLException {
+        int total = countByNameInDatabase(keyword);
+        int from = Math.min(Math.max(offset, 0), total);
+        int to = Math.min(from + Math.max(pageSize, 0), total);
+        if (from == to) {
+            return new ProductPage(new ArrayList<>(), from, total);
+        }
+        ArrayList<Product> productList = loadPageOrderedBy(keyword, sortKey, from, to - from);
+        System.out.println("Search " + keyword + ": " + productList.size() + " of " + total
+                + " products from offset " + from + " by " + sortKey);
+        return new ProductPage(productList, from, total);
+    }
+
+    //helper method
+    //count the products whose description contains the keyword, with the same condition as loadPageOrderedBy
+    private int countByNameInDatabase(String keyword) throws SQLException {
+        try (PooledConnection pc = connectionPool.borrow()) {
+            String query = "SELECT COUNT(*) FROM ProductTable WHERE " + lowerDescription(pc) + " LIKE ? ESCAPE '\\'";
+            PreparedStatement pstmt = pc.prepareStatement(query);
+            pstmt.setString(1, "%" + escapeLike(keyword.toLowerCase()) + "%");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    //helper method
+    //read one page of the products whose description contains the keyword, ordered by a column of ProductTable
+    private ArrayList<Product> loadPageOrderedBy(String keyword, ProductSortKey sortKey, int offset, int pageSize)
+            throws SQLException {
+        ArrayList<Product> productList = new ArrayList<>();
+        try (PooledConnection pc = connectionPool.borrow()) {
+            // one SQL text per sort key, so each is prepared once per connection
+            String query = "SELECT * FROM ProductTable WHERE " + lowerDescription(pc) + " LIKE ? ESCAPE '\\' "
+                    + "ORDER BY " + sortKey.getColumn() + ", productID OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+            PreparedStatement pstmt = pc.prepareStatement(query);
+            pstmt.setString(1, "%" + escapeLike(keyword.toLowerCase()) + "%");
+            pstmt.setInt(2, offset);
+            pstmt.setInt(3, pageSize);
+            try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    productList.add(makeProObjFromDbRecord(rs)); // Add all matching products to list
+                    productList.add(makeProObjFromDbRecord(rs));
                 }
+            }
+        }
+        return productList;
+    }
 
-                if (productList.isEmpty()) {
-                    System.out.println("Product " + name + " not found.");
-                }
+    //helper method
+    //the lower-cased description to match against: the generated column from SchemaMigrator version 2 if the
+    //database has it, otherwise LOWER(description), so searches still work on a database that was not migrated
+    private String lowerDescription(PooledConnection pc) throws SQLException {
+        String expression = lowerDescription;
+        if (expression == null) {
+            try (ResultSet rs = pc.getConnection().getMetaData().getColumns(null, null, "PRODUCTTABLE", "DESCRIPTIONLOWER")) {
+                expression = rs.next() ? "descriptionLower" : "LOWER(description)";
             }
+            if (expression.equals("LOWER(description)")) {
+                System.out.println("⚠️ ProductTable has no descriptionLower column (schema not migrated), "
+                        + "searching with LOWER(description)");
+            }
+            lowerDescription = expression;
+        }
+        return expression;
+    }
 
-        } catch (SQLException e) {
-            System.out.println("Database query error, search by name: " + name + " " + e.getMessage());
+    //the keyword is matched literally, as the search index does
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    //search several products by Id in one query per 50 IDs, return the products found keyed by Id
+    @Override
+    public Map<String, Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(productIds));
+        Map<String, Product> products = new LinkedHashMap<>();
+        for (Product product : loadProductsByIds(uniqueIds)) {
+            products.put(product.getProductId(), product);
         }
+        System.out.println(products.size() + " of " + uniqueIds.size() + " products found by Id.");
+        return products;
+    }
 
-        return productList; // could be empty if no matches
+    //load the products with the given IDs, in the order of the IDs
+    //IDs of products that no longer exist are skipped
+    private ArrayList<Product> loadProductsByIds(List<String> productIds) throws SQLException {
+        ArrayList<Product> productList = new ArrayList<>();
+        if (productIds.isEmpty()) return productList;
+
+        Map<String, Product> productsById = new HashMap<>();
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement stmt = pc.prepareStatement(selectByIdsSql);
+            for (int from = 0; from < productIds.size(); from += ID_CHUNK_SIZE) {
+                List<String> chunk = productIds.subList(from, Math.min(from + ID_CHUNK_SIZE, productIds.size()));
+                for (int i = 0; i < ID_CHUNK_SIZE; i++) {
+                    // pad a short last chunk by repeating its last ID, duplicates in an IN list are harmless
+                    stmt.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Product product = makeProObjFromDbRecord(rs);
+                        productsById.put(product.getProductId(), product);
+                    }
+                }
+            }
+        }
+        for (String productId : productIds) {
+            Product product = productsById.get(productId);
+            if (product != null) {
+                productList.add(product);
+            }
+        }
+        return productList;
+    }
+
+    //the lines of a failed purchase, as copies holding the stock left now (one query for all of them),
+    //so the customer can be told how many are really available
+    private ArrayList<Product> withCurrentStock(ArrayList<Product> lines) throws SQLException {
+        List<String> productIds = new ArrayList<>();
+        for (Product line : lines) {
+            productIds.add(line.getProductId());
+        }
+        Map<String, Product> current = searchByProductIds(productIds);
+        ArrayList<Product> refreshed = new ArrayList<>();
+        for (Product line : lines) {
+            Product stored = current.get(line.getProductId());
+            Product copy = new Product(line.getProductId(), line.getProductDescription(), line.getProductImageName(),
+                    line.getUnitPrice(), stored == null ? 0 : stored.getStockQuantity());
+            copy.setOrderedQuantity(line.getOrderedQuantity());
+            refreshed.add(copy);
+        }
+        return refreshed;
     }
 
     //make a Product object from the database record
@@ -128,57 +326,63 @@ public class DerbyRW implements DatabaseRW {
         return product;
     }
 
+    /**
+     * Each line is bought with a single conditional UPDATE that only succeeds if enough stock is left,
+     * so the stock check and the decrement happen atomically in the database.
+     * All lines run in one transaction: if any line updates 0 rows the whole purchase is rolled back
+     * and those lines are returned as insufficient, with the stock left now (read in one batch lookup).
+     * Derby's row locks keep concurrent tills consistent; the product lock stripes are only taken so that
+     * a purchase does not interleave with a warehouse edit of the same products.
+     *
+     * With group commit enabled the lines are handed to the GroupCommitter instead, which runs them with
+     * other tills' purchases in one transaction. No stripes are taken then: a till holding stripes while
+     * waiting for the batch would stop other tills buying the same products from joining it.
+     */
     public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
-        lock.lock();  // Lock the critical section to prevent concurrent access
         ArrayList<Product> insufficientProducts = new ArrayList<>();
 
-        String checkSql = "SELECT inStock FROM ProductTable WHERE productId = ?";
-        String updateSql = "UPDATE ProductTable SET inStock = inStock - ? WHERE productId = ?";
+        String updateSql = "UPDATE ProductTable SET inStock = inStock - ? WHERE productID = ? AND inStock >= ?";
+
+        // Update rows in productID order so that two concurrent purchases always lock rows in the same order
+        ArrayList<Product> sortedList = new ArrayList<>(proList);
+        Collections.sort(sortedList);
+
+        if (groupCommitter != null) {
+            insufficientProducts = groupCommitter.purchase(sortedList);
+            System.out.println(insufficientProducts.isEmpty() ? "Database update successful (group commit)."
+                    : "Insufficient stock for some products, no stock was changed (group commit).");
+            return insufficientProducts.isEmpty() ? insufficientProducts : withCurrentStock(insufficientProducts);
+        }
+
+        ArrayList<String> productIds = new ArrayList<>();
+        for (Product product : sortedList) {
+            productIds.add(product.getProductId());
+        }
 
-        // Use try-with-resources for Connection and PreparedStatements
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
+        // lockAll takes the stripes in a fixed order, so purchases of overlapping trolleys cannot deadlock
+        try (ProductLockManager.LockHandle productLock = productLocks.lockAll(productIds);
+             PooledConnection pc = connectionPool.borrow()) {
+            Connection conn = pc.getConnection();
             conn.setAutoCommit(false); // Turn off auto-commit for transaction
 
-            // Use a second try-with-resources for the PreparedStatements
-            try (PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-                 PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
-
-                boolean allSufficient = true; // Flag to track if all products have sufficient stock
-
-                for (Product product : proList) {
-                    checkStmt.setString(1, product.getProductId());
-                    ResultSet rs = checkStmt.executeQuery();
-
-                    if (rs.next()) {
-                        int currentStock = rs.getInt("inStock");
-                        int newStock = currentStock - product.getOrderedQuantity();
-
-                        // Debugging: Print values before update
-                        System.out.println("Product ID: " + product.getProductId());
-                        System.out.println("Before change: " + currentStock);
-                        System.out.println("Quantity Ordered: " + product.getOrderedQuantity());
-
-                        if (newStock >= 0) { // Ensure stock doesn't go negative
-                            updateStmt.setInt(1, product.getOrderedQuantity());
-                            updateStmt.setString(2, product.getProductId());
-                            updateStmt.addBatch();
-
-                            // Debugging: Print values after update
-                            System.out.println("After change: " + newStock);
-                            System.out.println("Update successful for Product ID: " + product.getProductId());
-                        } else {
-                            insufficientProducts.add(product);
-                            allSufficient = false; // Mark that there's at least one insufficient product
-                            System.out.println("Not enough stock for Product ID: " + product.getProductId());
-                        }
-                        System.out.println("--------------------------------");
+            try {
+                PreparedStatement updateStmt = pc.prepareStatement(updateSql); // cached on the connection, not closed here
+
+                for (Product product : sortedList) {
+                    updateStmt.setInt(1, product.getOrderedQuantity());
+                    updateStmt.setString(2, product.getProductId());
+                    updateStmt.setInt(3, product.getOrderedQuantity());
+                    int updatedRows = updateStmt.executeUpdate(); // 0 if the product is missing or stock is too low
+
+                    if (updatedRows == 0) {
+                        insufficientProducts.add(product);
+                        System.out.println("Not enough stock for Product ID: " + product.getProductId()
+                                + " (" + product.getOrderedQuantity() + " requested)");
                     }
                 }
 
-                if (allSufficient) {
-                    // If all products have sufficient stock, execute the batch and commit
-                    updateStmt.executeBatch();
-                    conn.commit();  // Commit all updates if all updates succeed
+                if (insufficientProducts.isEmpty()) {
+                    conn.commit();  // Commit all updates if every line succeeded
                     System.out.println("Database update successful.");
                 } else {
                     // If there's insufficient stock for any product, rollback the entire transaction
@@ -188,19 +392,17 @@ public class DerbyRW implements DatabaseRW {
 
             } catch (SQLException e) {
                 conn.rollback();  // Rollback if anything failed inside
-                System.out.println("Database update error, update failed");
+                System.out.println("Database update error, update failed: " + e.getMessage());
+                throw e; // let the caller report the failure instead of treating it as a successful purchase
             }
-        } finally {
-            lock.unlock(); // Always release the lock after the operation
         }
 
-        return insufficientProducts;
+        return insufficientProducts.isEmpty() ? insufficientProducts : withCurrentStock(insufficientProducts);
     }
 
-
     //warehouse edits an existing product
     public void updateProduct(String id, String des, double price, String iName, int stock) throws SQLException {
-        lock.lock();
+        ProductLockManager.LockHandle productLock = productLocks.lock(id); // only blocks edits of the same product stripe
         String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
         String updateSql = "UPDATE ProductTable SET " +
                 "description = ?, " +
@@ -209,9 +411,9 @@ public class DerbyRW implements DatabaseRW {
                 "inStock = ? " +
                 "WHERE productID = ?";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement selectStmt = conn.prepareStatement(selectSql);
-             PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement selectStmt = pc.prepareStatement(selectSql);
+            PreparedStatement updateStmt = pc.prepareStatement(updateSql);
 
             // Print Before Update
             selectStmt.setString(1, id);
@@ -235,7 +437,9 @@ public class DerbyRW implements DatabaseRW {
             updateStmt.setString(3, iName);
             updateStmt.setInt(4, stock);
             updateStmt.setString(5, id);
-            updateStmt.executeUpdate();
+            if (updateStmt.executeUpdate() > 0 && searchIndex != null) {
+                searchIndex.put(id, des); // keep name search in step with the new description
+            }
 
             // Print After Update
             try (ResultSet rs = selectStmt.executeQuery()) {
@@ -250,20 +454,20 @@ public class DerbyRW implements DatabaseRW {
             }
         }
         finally {
-            lock.unlock(); // Always release the lock after the operation
+            productLock.close(); // Always release the lock after the operation
         }
     }
 
 //warehouse delete an existing product
     public void deleteProduct(String proId) throws SQLException {
-        lock.lock();
+        ProductLockManager.LockHandle productLock = productLocks.lock(proId); // only blocks edits of the same product stripe
         String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
         String deleteSql = "DELETE FROM ProductTable WHERE productID = ?";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement selectStmt = conn.prepareStatement(selectSql);
-             PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
-            conn.setAutoCommit(true); // Set auto-commit to true immediately
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement selectStmt = pc.prepareStatement(selectSql);
+            PreparedStatement deleteStmt = pc.prepareStatement(deleteSql);
+            pc.getConnection().setAutoCommit(true); // Set auto-commit to true immediately
 
             // print product details before deletion
             selectStmt.setString(1, proId);
@@ -282,12 +486,14 @@ public class DerbyRW implements DatabaseRW {
 
             // delete from database
             deleteStmt.setString(1, proId);
-            deleteStmt.executeUpdate();
+            if (deleteStmt.executeUpdate() > 0 && searchIndex != null) {
+                searchIndex.remove(proId);
+            }
             System.out.println("Product " + proId + " deleted from database.");
         }
 
         finally {
-            lock.unlock(); // Always release the lock after the operation
+            productLock.close(); // Always release the lock after the operation
         }
     }
 
@@ -296,17 +502,18 @@ public class DerbyRW implements DatabaseRW {
     public boolean isProIdAvailable(String proId) throws SQLException {
         String query = "SELECT COUNT(*) FROM ProductTable WHERE productID = ?";
                              //the count of records that match the given proId.
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement stmt = pc.prepareStatement(query);
             stmt.setString(1, proId);
-            ResultSet rs = stmt.executeQuery();
             // the rs is the COUNT(*) result (a single number): how many records that match the given proId.
             // If count > 0, the ID is already in the database, so it's not available, return false
             // If count = 0, the ID is available, return true
-            if (rs.next()) { // Move cursor to the first (and only) row
-                int count = rs.getInt(1); // Get the first column value (the count)
-                if (count == 0) return true;
-                else return false;
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) { // Move cursor to the first (and only) row
+                    int count = rs.getInt(1); // Get the first column value (the count)
+                    if (count == 0) return true;
+                    else return false;
+                }
             }
             return false; // Default case (should not happen)
         }
@@ -315,31 +522,35 @@ public class DerbyRW implements DatabaseRW {
     //   /images/0001TV.jpg
     //warehouse adds a new product to database
     public void insertNewProduct(String id, String des,double price,String image,int stock) throws SQLException {
-        lock.lock();
-        String insertSql = "INSERT INTO ProductTable VALUES(?, ?, ?, ?, ?)";
+        ProductLockManager.LockHandle productLock = productLocks.lock(id); // only blocks edits of the same product stripe
+        // name the columns, ProductTable also has the generated descriptionLower column
+        String insertSql = "INSERT INTO ProductTable (productID, description, unitPrice, image, inStock) VALUES(?, ?, ?, ?, ?)";
         String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
-        try (Connection conn = DriverManager.getConnection(dbURL);
-        PreparedStatement insertStmt = conn.prepareStatement(insertSql);
-        PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
-            conn.setAutoCommit(true); // Set auto-commit to true immediately
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement insertStmt = pc.prepareStatement(insertSql);
+            PreparedStatement selectStmt = pc.prepareStatement(selectSql);
+            pc.getConnection().setAutoCommit(true); // Set auto-commit to true immediately
             insertStmt.setString(1, id);
             insertStmt.setString(2, des);
             insertStmt.setDouble(3, price);
             insertStmt.setString(4, image);
             insertStmt.setInt(5, stock);
             selectStmt.setString(1, id);
-            insertStmt.executeUpdate();
-            ResultSet rs = selectStmt.executeQuery();
-            if (rs.next()) { //print the inserted record
-                System.out.println("Insert successful for Product ID: \" + id");
-                System.out.println("ID: " + rs.getString("productID"));
-                System.out.println("Description: " + rs.getString("description"));
-                System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                System.out.println("Stock: " + rs.getInt("inStock"));
+            if (insertStmt.executeUpdate() > 0 && searchIndex != null) {
+                searchIndex.put(id, des);
+            }
+            try (ResultSet rs = selectStmt.executeQuery()) {
+                if (rs.next()) { //print the inserted record
+                    System.out.println("Insert successful for Product ID: \" + id");
+                    System.out.println("ID: " + rs.getString("productID"));
+                    System.out.println("Description: " + rs.getString("description"));
+                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
+                    System.out.println("Stock: " + rs.getInt("inStock"));
+                }
             }
         }
         finally {
-            lock.unlock(); // Always release the lock after the operation
+            productLock.close(); // Always release the lock after the operation
         }
     }
 
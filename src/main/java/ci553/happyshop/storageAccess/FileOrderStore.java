@@ -0,0 +1,205 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * FileOrderStore is the legacy OrderStore: one text file per order, in the folder of its state.
+ * A state change rewrites the file through a temp file and moves it to the next folder
+ * (see OrderFileManager). Selected with -Dhappyshop.orders.store=files.
+ *
+ * Startup: the uncollected orders are saved to a snapshot (see OrderStateSnapshot) after they are loaded
+ * and on close. loadActiveOrders takes a folder's orders from the snapshot when the folder has not been
+ * modified since the snapshot was written, and only lists the folders that changed. Both folders are
+ * listed in parallel when there is no snapshot. The snapshot only knows the changes made by this
+ * process, so it assumes no other process writes the order folders while it runs.
+ *
+ * Collected order files are rolled into the OrderArchive in the background, so readOrder also looks there.
+ */
+
+public class FileOrderStore implements OrderStore {
+    private final Path orderedPath;
+    private final Path progressingPath;
+    private final Path collectedPath;
+    private final Path snapshotPath;
+    private final OrderArchive archive; // null if archiving is off
+
+    // The uncollected orders, kept up to date once loadActiveOrders has run, and saved to the snapshot on close
+    private final ConcurrentSkipListMap<Long, OrderState> activeOrders = new ConcurrentSkipListMap<>();
+    private volatile boolean activeOrdersLoaded = false;
+    // Order writes share the read lock; a snapshot takes the write lock, so every folder change is either
+    // in the snapshot or newer than it
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    public FileOrderStore(Path orderedPath, Path progressingPath, Path collectedPath, Path snapshotPath,
+                          OrderArchive archive) {
+        this.orderedPath = orderedPath;
+        this.progressingPath = progressingPath;
+        this.collectedPath = collectedPath;
+        this.snapshotPath = snapshotPath;
+        this.archive = archive;
+    }
+
+    public void createOrder(long orderId, String orderDetail) throws IOException {
+        snapshotLock.readLock().lock();
+        try {
+            OrderFileManager.createOrderFile(orderedPath, orderId, orderDetail);
+            activeOrders.put(orderId, OrderState.Ordered);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    public boolean updateOrderState(long orderId, OrderState newState) throws IOException {
+        snapshotLock.readLock().lock();
+        try {
+            boolean moved = switch (newState) {
+                case Progressing -> OrderFileManager.updateAndMoveOrderFile(orderId, newState, orderedPath, progressingPath);
+                case Collected -> OrderFileManager.updateAndMoveOrderFile(orderId, newState, progressingPath, collectedPath);
+                case Ordered -> false; // orders never go back to Ordered
+            };
+            if (moved) {
+                if (newState == OrderState.Collected) {
+                    activeOrders.remove(orderId);
+                } else {
+                    activeOrders.put(orderId, newState);
+                }
+            }
+            return moved;
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    public String readOrder(long orderId) throws IOException {
+        for (Path dir : new Path[]{progressingPath, orderedPath, collectedPath}) {
+            if (Files.exists(dir.resolve(orderId + ".txt"))) {
+                return OrderFileManager.readOrderFile(dir, orderId);
+            }
+        }
+        String archivedOrder = archive == null ? null : archive.readArchivedOrder(orderId);
+        if (archivedOrder != null) {
+            return archivedOrder;
+        }
+        throw new IOException("Order file not found: " + orderId + ".txt");
+    }
+
+    public TreeMap<Long, OrderState> loadActiveOrders() {
+        snapshotLock.writeLock().lock(); // no order is written while the folders are read
+        try {
+            return loadActiveOrdersLocked();
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    private TreeMap<Long, OrderState> loadActiveOrdersLocked() {
+        OrderStateSnapshot snapshot = OrderStateSnapshot.read(snapshotPath);
+        FileTime snapshotTime = snapshot == null ? null : lastModified(snapshotPath);
+
+        // the folders that changed since the snapshot are listed at the same time
+        CompletableFuture<List<Long>> ordered = orderIdsSince(orderedPath, OrderState.Ordered, snapshot, snapshotTime);
+        CompletableFuture<List<Long>> progressing =
+                orderIdsSince(progressingPath, OrderState.Progressing, snapshot, snapshotTime);
+
+        TreeMap<Long, OrderState> loadedOrders = new TreeMap<>();
+        for (long orderId : ordered.join()) {
+            loadedOrders.put(orderId, OrderState.Ordered);
+        }
+        for (long orderId : progressing.join()) {
+            loadedOrders.put(orderId, OrderState.Progressing);
+        }
+        activeOrders.clear();
+        activeOrders.putAll(loadedOrders);
+        activeOrdersLoaded = true;
+        saveSnapshot();
+        return loadedOrders;
+    }
+
+    //Saves the uncollected orders for the next start, and stops the archiver
+    @Override
+    public void close() throws IOException {
+        if (activeOrdersLoaded) {
+            saveSnapshot();
+        }
+        if (archive != null) {
+            archive.close();
+        }
+    }
+
+    // The orders in a folder: from the snapshot if the folder has not changed since it was written, else listed
+    private CompletableFuture<List<Long>> orderIdsSince(Path dir, OrderState state, OrderStateSnapshot snapshot,
+                                                        FileTime snapshotTime) {
+        FileTime dirTime = lastModified(dir);
+        if (snapshot != null && snapshotTime != null && dirTime != null && dirTime.compareTo(snapshotTime) < 0) {
+            List<Long> orderIds = new ArrayList<>();
+            for (OrderStateSnapshot.Entry entry : snapshot.entries()) {
+                if (entry.state() == state) {
+                    orderIds.add(entry.orderId());
+                }
+            }
+            return CompletableFuture.completedFuture(orderIds);
+        }
+        return CompletableFuture.supplyAsync(() -> orderIdsIn(dir));
+    }
+
+    private void saveSnapshot() {
+        snapshotLock.writeLock().lock();
+        try {
+            List<OrderStateSnapshot.Entry> entries = new ArrayList<>(activeOrders.size());
+            for (Map.Entry<Long, OrderState> entry : activeOrders.entrySet()) {
+                entries.add(new OrderStateSnapshot.Entry(entry.getKey(), entry.getValue(), 0, 0, 0, 0));
+            }
+            OrderStateSnapshot.write(snapshotPath, new OrderStateSnapshot(0, 0, entries, List.of()));
+        } catch (IOException e) {
+            System.out.println("Failed to write the order snapshot, " + e.getMessage());
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    // The last-modified time of a file or folder, or null if it cannot be read
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Loads the order IDs from the names of the .txt files in a folder, eg 12.txt
+    static List<Long> orderIdsIn(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            System.out.println(dir + " does not exist.");
+            return List.of();
+        }
+        try (Stream<Path> fileStream = Files.list(dir)) {
+            return fileStream.filter(Files::isRegularFile)
+                    .map(file -> file.getFileName().toString())
+                    .filter(fileName -> fileName.endsWith(".txt"))
+                    .map(fileName -> fileName.substring(0, fileName.length() - ".txt".length()))
+                    .filter(name -> {
+                        if (name.chars().allMatch(Character::isDigit) && !name.isEmpty()) return true;
+                        System.out.println("Invalid file name: " + name + ".txt");
+                        return false;
+                    })
+                    .map(Long::parseLong)
+                    .toList();
+        } catch (IOException e) {
+            System.out.println("Error reading " + dir + ", " + e.getMessage());
+            return List.of();
+        }
+    }
+}
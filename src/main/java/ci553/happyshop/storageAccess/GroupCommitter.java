@@ -0,0 +1,206 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GroupCommitter runs the purchases of many concurrent checkouts in one database transaction,
+ * so they share a single commit (and log flush) instead of paying for one each.
+ *
+ * How it works:
+ * - purchase() puts the request on a queue and waits for its own result.
+ * - One committer thread takes the first waiting request, then keeps collecting requests until
+ *   maxBatchSize is reached or windowMillis has passed, and runs the whole batch in one transaction.
+ * - Each request runs inside its own savepoint with the same conditional UPDATEs as DerbyRW, so it is still
+ *   all-or-nothing: if any line is short, only that request is rolled back to its savepoint and its
+ *   insufficient products are returned to its caller. The other requests in the batch are unaffected.
+ * - The batch is committed once and then every waiting caller is released with its result.
+ *
+ * It is opt-in (-Dhappyshop.db.groupCommit=true), see DatabaseRWFactory. Settings:
+ * happyshop.groupCommit.maxBatch (default 32) and happyshop.groupCommit.windowMillis (default 2).
+ * A checkout may wait up to windowMillis longer, in exchange for far fewer commits under load.
+ */
+
+public class GroupCommitter {
+    private static final String updateSql =
+            "UPDATE ProductTable SET inStock = inStock - ? WHERE productID = ? AND inStock >= ?";
+
+    private final ConnectionPool connectionPool;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final LinkedBlockingQueue<PurchaseRequest> queue = new LinkedBlockingQueue<>();
+    private final Thread committerThread;
+    private volatile boolean running = true;
+
+    // statistics
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder requestCount = new LongAdder();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+
+    // lines are sorted by product ID; result is completed with the insufficient products
+    private record PurchaseRequest(ArrayList<Product> lines, CompletableFuture<ArrayList<Product>> result) {}
+
+    public GroupCommitter(ConnectionPool connectionPool, int maxBatchSize, long windowMillis) {
+        this.connectionPool = connectionPool;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        committerThread = new Thread(this::commitLoop, "purchase-group-committer");
+        committerThread.setDaemon(true); // must not keep the JVM alive
+        committerThread.start();
+    }
+
+    /**
+     * Queues a purchase and waits until the batch it joined has been committed.
+     * If interrupted while still queued the request is withdrawn and nothing is bought. Once it is in a batch
+     * the call keeps waiting for that batch, so the result always says whether the stock was taken.
+     *
+     * @param sortedLines the products to buy, sorted by product ID
+     * @return the products with insufficient stock; empty if every line was bought
+     */
+    public ArrayList<Product> purchase(ArrayList<Product> sortedLines) throws SQLException {
+        PurchaseRequest request = new PurchaseRequest(sortedLines, new CompletableFuture<>());
+        queue.add(request);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return request.result().get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    if (queue.remove(request)) { // not taken into a batch yet, so nothing was bought
+                        throw new SQLException("Interrupted while waiting for the group commit", e);
+                    }
+                    // already in a batch: wait for its real outcome, the caller must know whether stock was taken
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new SQLException("Group commit failed", e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public GroupCommitStats getStats() {
+        return new GroupCommitStats(batchCount.sum(), requestCount.sum(), largestBatch.get(), queue.size());
+    }
+
+    //Stops the committer thread, requests still queued are failed
+    public void close() {
+        running = false;
+        committerThread.interrupt();
+        PurchaseRequest request;
+        while ((request = queue.poll()) != null) {
+            request.result().completeExceptionally(new SQLException("Group committer closed"));
+        }
+    }
+
+    private void commitLoop() {
+        List<PurchaseRequest> batch = new ArrayList<>();
+        while (running) {
+            try {
+                batch.add(queue.take()); // wait for the first request of the next batch
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long left = deadline - System.nanoTime();
+                    PurchaseRequest next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break; // window is over
+                    batch.add(next);
+                }
+                commitBatch(batch);
+            } catch (InterruptedException e) {
+                for (PurchaseRequest request : batch) {
+                    request.result().completeExceptionally(new SQLException("Group committer stopped"));
+                }
+                break;
+            } catch (RuntimeException e) {
+                // never let the committer thread die, every waiting caller would hang
+                for (PurchaseRequest request : batch) {
+                    request.result().completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commitBatch(List<PurchaseRequest> batch) {
+        List<ArrayList<Product>> outcomes = new ArrayList<>(); // null for a request that failed on its own
+        try (PooledConnection pc = connectionPool.borrow()) {
+            Connection conn = pc.getConnection();
+            conn.setAutoCommit(false); // the pool restores auto-commit when the connection is returned
+            PreparedStatement updateStmt = pc.prepareStatement(updateSql); // cached on the connection, not closed here
+
+            for (PurchaseRequest request : batch) {
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    ArrayList<Product> insufficientProducts = new ArrayList<>();
+                    for (Product product : request.lines()) {
+                        updateStmt.setInt(1, product.getOrderedQuantity());
+                        updateStmt.setString(2, product.getProductId());
+                        updateStmt.setInt(3, product.getOrderedQuantity());
+                        if (updateStmt.executeUpdate() == 0) { // missing product or stock too low
+                            insufficientProducts.add(product);
+                        }
+                    }
+                    if (insufficientProducts.isEmpty()) {
+                        conn.releaseSavepoint(savepoint);
+                    } else {
+                        conn.rollback(savepoint); // undo only this request
+                    }
+                    outcomes.add(insufficientProducts);
+                } catch (SQLException e) {
+                    conn.rollback(savepoint);
+                    request.result().completeExceptionally(e);
+                    outcomes.add(null);
+                }
+            }
+
+            conn.commit(); // one commit for the whole batch
+        } catch (SQLException e) {
+            System.out.println("Group commit of " + batch.size() + " purchases failed: " + e.getMessage());
+            for (PurchaseRequest request : batch) {
+                request.result().completeExceptionally(e); // no effect on requests that already failed
+            }
+            return;
+        }
+
+        batchCount.increment();
+        requestCount.add(batch.size());
+        largestBatch.accumulateAndGet(batch.size(), Math::max);
+        for (int i = 0; i < batch.size(); i++) {
+            if (outcomes.get(i) != null) {
+                batch.get(i).result().complete(outcomes.get(i));
+            }
+        }
+    }
+
+    /**
+     * A snapshot of the group commit counters.
+     * @param batches       transactions committed
+     * @param requests      purchases committed in those transactions
+     * @param largestBatch  most purchases in one transaction
+     * @param queued        purchases waiting right now
+     */
+    public record GroupCommitStats(long batches, long requests, int largestBatch, int queued) {
+        public double averageBatchSize() {
+            return batches == 0 ? 0 : (double) requests / batches;
+        }
+    }
+}
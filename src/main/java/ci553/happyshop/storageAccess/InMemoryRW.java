@@ -0,0 +1,185 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.systemSetup.SetDatabase;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * InMemoryRW is a DatabaseRW that keeps every product in memory, with no database at all.
+ * It is selected with -Dhappyshop.db.backend=memory (see DatabaseRWFactory) for load tests and
+ * throw-away test runs where Derby's disk I/O and boot time would dominate.
+ *
+ * It behaves like DerbyRW:
+ * - searchProduct() tries the product ID first, then a case-insensitive description match, sorted by product ID.
+ * - purchaseStocks() is all-or-nothing: either every line is bought, or no stock changes and the lines
+ *   without enough stock are returned.
+ * - Products are copied in and out, so callers can never change the stored stock by accident.
+ *
+ * Products are kept in a ConcurrentSkipListMap (sorted by ID), so reads never block. Mutations take the
+ * same process-wide product lock stripes as DerbyRW, which makes a multi-product purchase atomic with
+ * respect to other purchases and warehouse edits of the same products.
+ *
+ * The data lives as long as the JVM; DatabaseRWFactory shares one instance between all clients.
+ * Users and payment transactions are not products and still go through UserDAO and TransactionDAO.
+ */
+
+public class InMemoryRW implements DatabaseRW {
+    private static final ProductLockManager productLocks = ProductLockManager.getInstance();
+
+    // A stored product, immutable so readers never see a half-applied change
+    private record Row(String productId, String description, double unitPrice, String image, int inStock) {
+        Product toProduct() {
+            return new Product(productId, description, image, unitPrice, inStock);
+        }
+
+        Row withStock(int newStock) {
+            return new Row(productId, description, unitPrice, image, newStock);
+        }
+    }
+
+    private final ConcurrentSkipListMap<String, Row> products = new ConcurrentSkipListMap<>();
+
+    /**
+     * Creates an in-memory store holding the same sample products as SetDatabase.
+     */
+    public static InMemoryRW withSampleProducts() {
+        InMemoryRW inMemoryRW = new InMemoryRW();
+        for (SetDatabase.SampleProduct product : SetDatabase.sampleProducts) {
+            inMemoryRW.putRow(new Row(product.productId(), product.description(), product.unitPrice(),
+                    product.image(), product.inStock()));
+        }
+        return inMemoryRW;
+    }
+
+    private void putRow(Row row) {
+        products.put(row.productId(), row);
+    }
+
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        ArrayList<Product> productList = new ArrayList<>();
+
+        // searching by product ID at first
+        Product product = searchByProductId(keyword);
+        if (product != null) {
+            productList.add(product);
+        } else { // If no products found by ID, searching by product name
+            String kw = keyword.toLowerCase();
+            for (Row row : products.values()) { // already in product ID order
+                String des = row.description() == null ? "" : row.description().toLowerCase();
+                if (des.contains(kw)) {
+                    productList.add(row.toProduct());
+                }
+            }
+        }
+
+        if (productList.isEmpty()) {
+            System.out.println("Product " + keyword + " not found.");
+        }
+        return productList;
+    }
+
+    public Product searchByProductId(String productId) throws SQLException {
+        Row row = products.get(productId);
+        if (row == null) {
+            System.out.println("Product " + productId + " not found.");
+            return null;
+        }
+        System.out.println("Product " + productId + " found.");
+        return row.toProduct();
+    }
+
+    public Map<String, Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        Map<String, Product> found = new LinkedHashMap<>();
+        for (String productId : productIds) {
+            Row row = products.get(productId);
+            if (row != null) {
+                found.putIfAbsent(productId, row.toProduct());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * All lines are checked against the stored stock while the stripes of every product in the list are held,
+     * and the new stock is only written once every line has passed.
+     * A product ordered on several lines is checked against what the earlier lines left.
+     */
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+        ArrayList<Product> insufficientProducts = new ArrayList<>();
+
+        ArrayList<Product> sortedList = new ArrayList<>(proList);
+        Collections.sort(sortedList);
+        ArrayList<String> productIds = new ArrayList<>();
+        for (Product product : sortedList) {
+            productIds.add(product.getProductId());
+        }
+
+        try (ProductLockManager.LockHandle productLock = productLocks.lockAll(productIds)) {
+            Map<String, Row> updated = new HashMap<>(); // rows as they will be after the purchase
+            for (Product product : sortedList) {
+                String id = product.getProductId();
+                Row row = updated.containsKey(id) ? updated.get(id) : products.get(id);
+                int ordered = product.getOrderedQuantity();
+
+                if (row == null || row.inStock() < ordered) {
+                    insufficientProducts.add(product);
+                    System.out.println("Not enough stock for Product ID: " + id + " (" + ordered + " requested)");
+                } else {
+                    updated.put(id, row.withStock(row.inStock() - ordered));
+                }
+            }
+
+            if (insufficientProducts.isEmpty()) {
+                products.putAll(updated); // safe: nobody else can change these products while we hold their stripes
+                System.out.println("In-memory stock update successful.");
+            } else {
+                System.out.println("Insufficient stock for some products, no stock was changed.");
+            }
+        }
+        return insufficientProducts;
+    }
+
+    public void updateProduct(String id, String des, double price, String imageName, int stock) throws SQLException {
+        try (ProductLockManager.LockHandle productLock = productLocks.lock(id)) {
+            if (products.replace(id, new Row(id, des, price, imageName, stock)) == null) {
+                System.out.println("Product " + id + " not found, nothing updated.");
+            } else {
+                System.out.println("Product " + id + " updated.");
+            }
+        }
+    }
+
+    public void deleteProduct(String id) throws SQLException {
+        try (ProductLockManager.LockHandle productLock = productLocks.lock(id)) {
+            if (products.remove(id) != null) {
+                System.out.println("Product " + id + " deleted.");
+            }
+        }
+    }
+
+    public void insertNewProduct(String id, String des, double price, String image, int stock) throws SQLException {
+        try (ProductLockManager.LockHandle productLock = productLocks.lock(id)) {
+            if (products.putIfAbsent(id, new Row(id, des, price, image, stock)) != null) {
+                // same outcome as the primary key violation DerbyRW would get
+                throw new SQLException("Product " + id + " already exists", "23505");
+            }
+            System.out.println("Product " + id + " inserted.");
+        }
+    }
+
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        return !products.containsKey(productId);
+    }
+
+    public int size() {
+        return products.size();
+    }
+}
@@ -0,0 +1,97 @@
+package ci553.happyshop.storageAccess;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size latency histogram, safe to record into from many threads without locking.
+ *
+ * Latencies are counted in microsecond buckets: one bucket per microsecond below 16 us, then
+ * 8 buckets for every power of two above that. The memory used never grows (496 counters), and a
+ * percentile read from it is at most 12.5% above the real value. The maximum is kept exactly.
+ */
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;        // 8 buckets per power of two
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;            // 0..15 us get a bucket each
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (64 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos, boolean failed) {
+        long micros = Math.max(nanos, 0) / 1_000;
+        buckets.incrementAndGet(bucketOf(micros));
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        if (failed) {
+            errorCount.increment();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / n;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Returns the latency that the given fraction of calls did not exceed, eg percentileMillis(0.99).
+     * The value is the upper edge of the bucket holding that call, but never more than the maximum.
+     */
+    public double percentileMillis(double fraction) {
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT]; // copy first, so the rank and the walk see the same counts
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundMicros(i) / 1_000.0, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros); // 4 or more here
+        int subBucket = (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return LINEAR_LIMIT + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundMicros(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 4;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + subBucket) * width + width - 1;
+    }
+}
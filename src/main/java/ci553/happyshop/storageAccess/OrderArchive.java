@@ -0,0 +1,434 @@
+package ci553.happyshop.storageAccess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * OrderArchive rolls the files of collected orders (orders/collected/*.txt) into a few compressed
+ * archive segments, so the collected folder no longer grows by one small file per order forever.
+ *
+ * Layout on disk (orders/archive/):
+ * - archive-00000001.dat: the data segment, a sequence of compressed blocks. Each block holds the files of
+ *   many orders one after another (up to about 64 KB before compression) and starts with a 12-byte header:
+ *   compressed length (int), uncompressed length (int), CRC32C of the uncompressed block (int).
+ * - archive-00000001.idx: the sidecar index of that segment: magic "HSA1", segment number (int),
+ *   data length (long), entry count (int), then per order: orderId (long), block offset (long),
+ *   offset in the block (int), length (int), and a CRC32C of all of it (int).
+ * - A segment is appended to until its data reaches segmentBytes (happyshop.orders.archive.segmentBytes,
+ *   default 16 MB), then a new segment is started.
+ *
+ * Safety:
+ * - New blocks are written after the data length recorded in the index, then the data is forced and the
+ *   index is replaced through a temp file and an atomic rename. A crash before the rename leaves blocks
+ *   the index does not know, which the next run writes over.
+ * - An order file is only deleted once its order has been read back from the archive and matches the file
+ *   byte for byte. A file that was archived but not deleted (a crash in between) is deleted by the next run.
+ *
+ * readArchivedOrder() finds the block of an order in the in-memory index and decompresses that block only.
+ * The archiver runs on a background thread every happyshop.orders.archive.intervalSeconds (default 300).
+ */
+
+public class OrderArchive {
+    private static final int INDEX_MAGIC = 0x48534131;  // "HSA1"
+    private static final int INDEX_HEADER_SIZE = 20;    // magic + segment + data length + count
+    private static final int INDEX_ENTRY_SIZE = 24;     // orderId + block offset + offset in block + length
+    private static final int BLOCK_HEADER_SIZE = 12;    // compressed length + uncompressed length + checksum
+    private static final int BLOCK_TARGET_SIZE = 64 * 1024;
+
+    // Where an archived order is
+    private record Location(int segment, long blockOffset, int offsetInBlock, int length) {}
+
+    // One order of the current segment, as written to its index
+    private record IndexEntry(long orderId, long blockOffset, int offsetInBlock, int length) {}
+
+    private final Path archiveDir;
+    private final long segmentBytes;
+    private final ConcurrentHashMap<Long, Location> locations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, FileChannel> segments = new ConcurrentHashMap<>(); // segment number -> data channel
+    private final ReentrantLock writeLock = new ReentrantLock(); // one archive run at a time
+
+    // The segment being appended to, guarded by writeLock
+    private int currentSegment;
+    private long currentDataLength;
+    private final List<IndexEntry> currentEntries = new ArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+
+    private OrderArchive(Path archiveDir, long segmentBytes) {
+        this.archiveDir = archiveDir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Opens the archive in the given folder, creating it if needed, and loads the index of every segment.
+     */
+    public static OrderArchive open(Path archiveDir, long segmentBytes) throws IOException {
+        OrderArchive archive = new OrderArchive(archiveDir, segmentBytes);
+        Files.createDirectories(archiveDir);
+        List<Integer> segmentNumbers = archive.listSegments();
+        try {
+            for (int segmentNumber : segmentNumbers) {
+                archive.loadSegment(segmentNumber, segmentNumber == segmentNumbers.get(segmentNumbers.size() - 1));
+            }
+            if (segmentNumbers.isEmpty()) {
+                archive.startSegment(1);
+            }
+        } catch (IOException e) {
+            archive.close();
+            throw e;
+        }
+        System.out.println("Order archive opened: " + archive.locations.size() + " orders in "
+                + archive.segments.size() + " segments");
+        return archive;
+    }
+
+    /**
+     * Archives the order files in the folder every intervalSeconds, on a background thread.
+     */
+    public synchronized void startArchiving(Path collectedDir, long intervalSeconds) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "order-archiver");
+            t.setDaemon(true); // must not keep the JVM alive, an interrupted run deletes nothing it has not verified
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                archiveCollectedOrders(collectedDir);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Archiving collected orders failed: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Moves the order files in the folder into the archive.
+     * @return the number of order files archived and deleted
+     */
+    public int archiveCollectedOrders(Path collectedDir) throws IOException {
+        List<Long> orderIds = FileOrderStore.orderIdsIn(collectedDir);
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        writeLock.lock();
+        try {
+            appendOrders(collectedDir, orderIds);
+        } finally {
+            writeLock.unlock();
+        }
+
+        // only delete what can be read back exactly as it was
+        int deleted = 0;
+        for (long orderId : orderIds) {
+            Path file = collectedDir.resolve(orderId + ".txt");
+            byte[] archived = readArchivedBytes(orderId);
+            if (archived != null && Arrays.equals(archived, Files.readAllBytes(file))) {
+                Files.delete(file);
+                deleted++;
+            } else {
+                System.out.println("Order " + orderId + " was not archived correctly, its file is kept");
+            }
+        }
+        System.out.println(deleted + " collected orders archived");
+        return deleted;
+    }
+
+    /**
+     * Reads an archived order, decompressing only the block that holds it.
+     * @return the order details in the same form as OrderFileManager.readOrderFile, or null if it is not archived
+     */
+    public String readArchivedOrder(long orderId) throws IOException {
+        byte[] bytes = readArchivedBytes(orderId);
+        return bytes == null ? null : OrderFileManager.orderTextOf(bytes);
+    }
+
+    //Whether the order is in the archive
+    public boolean contains(long orderId) {
+        return locations.containsKey(orderId);
+    }
+
+    //Number of orders in the archive
+    public int size() {
+        return locations.size();
+    }
+
+    //Stops the archiver and closes the segments
+    public void close() throws IOException {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+        }
+        writeLock.lock();
+        try {
+            for (FileChannel channel : segments.values()) {
+                channel.close();
+            }
+            segments.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Must hold writeLock. Writes the orders not archived yet, a block at a time, and then saves the index.
+    private void appendOrders(Path collectedDir, List<Long> orderIds) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_TARGET_SIZE + 4096);
+        List<long[]> blockOrders = new ArrayList<>(); // orderId, offset in block, length
+        List<Location> written = new ArrayList<>();
+        List<Long> writtenIds = new ArrayList<>();
+        for (long orderId : orderIds) {
+            if (locations.containsKey(orderId)) {
+                continue; // archived by an earlier run that stopped before deleting the file
+            }
+            byte[] content = Files.readAllBytes(collectedDir.resolve(orderId + ".txt"));
+            blockOrders.add(new long[]{orderId, block.size(), content.length});
+            block.write(content);
+            if (block.size() >= BLOCK_TARGET_SIZE) {
+                writeBlock(block, blockOrders, written, writtenIds);
+            }
+        }
+        if (block.size() > 0) {
+            writeBlock(block, blockOrders, written, writtenIds);
+        }
+        if (!writtenIds.isEmpty()) {
+            saveIndex();
+            for (int i = 0; i < writtenIds.size(); i++) {
+                locations.put(writtenIds.get(i), written.get(i)); // readable once the index is on disk
+            }
+        }
+    }
+
+    // Must hold writeLock. Compresses the block and appends it to the current segment, starting a new one when full.
+    private void writeBlock(ByteArrayOutputStream block, List<long[]> blockOrders,
+                            List<Location> written, List<Long> writtenIds) throws IOException {
+        byte[] uncompressed = block.toByteArray();
+        byte[] compressed = compress(uncompressed);
+        CRC32C crc = new CRC32C();
+        crc.update(uncompressed);
+
+        if (currentDataLength + BLOCK_HEADER_SIZE + compressed.length > segmentBytes && currentDataLength > 0) {
+            saveIndex(); // the full segment is finished
+            startSegment(currentSegment + 1);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER_SIZE + compressed.length);
+        buffer.putInt(compressed.length).putInt(uncompressed.length).putInt((int) crc.getValue()).put(compressed);
+        buffer.flip();
+        long blockOffset = currentDataLength;
+        writeFully(segments.get(currentSegment), buffer, blockOffset);
+        currentDataLength = blockOffset + BLOCK_HEADER_SIZE + compressed.length;
+
+        for (long[] order : blockOrders) {
+            currentEntries.add(new IndexEntry(order[0], blockOffset, (int) order[1], (int) order[2]));
+            written.add(new Location(currentSegment, blockOffset, (int) order[1], (int) order[2]));
+            writtenIds.add(order[0]);
+        }
+        block.reset();
+        blockOrders.clear();
+    }
+
+    // Must hold writeLock. Forces the data of the current segment, then replaces its index.
+    private void saveIndex() throws IOException {
+        segments.get(currentSegment).force(true);
+
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER_SIZE + currentEntries.size() * INDEX_ENTRY_SIZE + 4);
+        buffer.putInt(INDEX_MAGIC).putInt(currentSegment).putLong(currentDataLength).putInt(currentEntries.size());
+        for (IndexEntry entry : currentEntries) {
+            buffer.putLong(entry.orderId()).putLong(entry.blockOffset()).putInt(entry.offsetInBlock()).putInt(entry.length());
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        Path indexPath = indexPath(currentSegment);
+        Path tempPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, buffer, 0);
+            channel.force(true);
+        }
+        try {
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Loads the index of a segment. The last one becomes the segment appended to.
+    private void loadSegment(int segmentNumber, boolean isLast) throws IOException {
+        byte[] bytes = Files.readAllBytes(indexPath(segmentNumber));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, Math.max(0, bytes.length - 4));
+        if (bytes.length < INDEX_HEADER_SIZE + 4 || buffer.getInt(bytes.length - 4) != (int) crc.getValue()
+                || buffer.getInt() != INDEX_MAGIC || buffer.getInt() != segmentNumber) {
+            throw new IOException("Archive index " + indexPath(segmentNumber) + " is damaged");
+        }
+        long dataLength = buffer.getLong();
+        int count = buffer.getInt();
+        if (count < 0 || bytes.length != INDEX_HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE + 4) {
+            throw new IOException("Archive index " + indexPath(segmentNumber) + " has the wrong size");
+        }
+
+        FileChannel channel = FileChannel.open(dataPath(segmentNumber), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(segmentNumber, channel);
+        if (channel.size() < dataLength) {
+            throw new IOException("Archive segment " + dataPath(segmentNumber) + " is shorter than its index");
+        }
+
+        for (int i = 0; i < count; i++) {
+            IndexEntry entry = new IndexEntry(buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt());
+            locations.put(entry.orderId(), new Location(segmentNumber, entry.blockOffset(),
+                    entry.offsetInBlock(), entry.length()));
+            if (isLast) {
+                currentEntries.add(entry);
+            }
+        }
+        if (isLast) {
+            currentSegment = segmentNumber;
+            currentDataLength = dataLength; // anything after it was never indexed and is written over
+        }
+    }
+
+    // Creates a new, empty segment and makes it the one appended to
+    private void startSegment(int segmentNumber) throws IOException {
+        FileChannel channel = FileChannel.open(dataPath(segmentNumber), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(0);
+        segments.put(segmentNumber, channel);
+        currentSegment = segmentNumber;
+        currentDataLength = 0;
+        currentEntries.clear();
+    }
+
+    private byte[] readArchivedBytes(long orderId) throws IOException {
+        Location location = locations.get(orderId);
+        if (location == null) {
+            return null;
+        }
+        FileChannel channel = segments.get(location.segment());
+        if (channel == null) {
+            throw new IOException("Archive segment " + location.segment() + " is not open");
+        }
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        readFully(channel, header, location.blockOffset());
+        header.flip();
+        int compressedLength = header.getInt();
+        int uncompressedLength = header.getInt();
+        int checksum = header.getInt();
+        if (compressedLength < 0 || uncompressedLength < location.offsetInBlock() + location.length()) {
+            throw new IOException("Archive block of order " + orderId + " is damaged");
+        }
+        ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+        readFully(channel, compressed, location.blockOffset() + BLOCK_HEADER_SIZE);
+
+        byte[] block = decompress(compressed.array(), uncompressedLength);
+        CRC32C crc = new CRC32C();
+        crc.update(block);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Archive block of order " + orderId + " fails its checksum");
+        }
+        return Arrays.copyOfRange(block, location.offsetInBlock(), location.offsetInBlock() + location.length());
+    }
+
+    private static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] data, int uncompressedLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] result = new byte[uncompressedLength];
+            int n = 0;
+            while (n < uncompressedLength && !inflater.finished()) {
+                int read = inflater.inflate(result, n, uncompressedLength - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != uncompressedLength) {
+                throw new IOException("Archive block is shorter than expected");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("Archive block cannot be decompressed", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private Path dataPath(int segmentNumber) {
+        return archiveDir.resolve(String.format("archive-%08d.dat", segmentNumber));
+    }
+
+    private Path indexPath(int segmentNumber) {
+        return archiveDir.resolve(String.format("archive-%08d.idx", segmentNumber));
+    }
+
+    // Segment numbers that have an index in the archive folder, in order
+    private List<Integer> listSegments() throws IOException {
+        List<Integer> segmentNumbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(archiveDir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.matches("archive-\\d{8}\\.idx")) {
+                    segmentNumbers.add(Integer.parseInt(name.substring(8, 16)));
+                }
+            }
+        }
+        segmentNumbers.sort(null);
+        return segmentNumbers;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive segment");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -2,15 +2,18 @@ package ci553.happyshop.storageAccess;
 
 import ci553.happyshop.orderManagement.OrderState;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class manages creation, updating, and relocation of order files.
@@ -23,7 +26,7 @@ import java.time.format.DateTimeFormatter;
  * When a new order is created, a file (e.g.,12.txt) is generated and placed in the "ordered" folder.
  * The content of the file follows this structure:
  *  <pre>
- *  OrderId: 12
+ *  Order ID: 12
  *  State: Ordered
  *  OrderedDateTime: 2025-03-11 19:53:45
  *  ProgressingDateTime:
@@ -40,12 +43,41 @@ import java.time.format.DateTimeFormatter;
  *  1. update state from Ordered to Progressing, (then move the file to progressing folder)
  *  2. update state from Progressing to Collected (then move the file to collected folder)
  * </p>
+ *
+ * <p>
+ * The first five lines (the header) are written with fixed widths: every value is padded with spaces
+ * to the width of its field, and every line ends with a single '\n'. The state and the three timestamps
+ * are therefore always at the same byte offsets, and a state change only overwrites those few bytes
+ * with positional FileChannel writes, however many items the order has.
+ * Files written before this layout are rewritten in it the first time their state changes.
+ * Readers strip the padding, so the order details read back are the same in both layouts.
+ * </p>
  */
 
 public class OrderFileManager {
+    private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // The fixed-width header: one label and one padded value per line
+    private static final String[] HEADER_LABELS =
+            {"Order ID: ", "State: ", "OrderedDateTime: ", "ProgressingDateTime: ", "CollectedDateTime: "};
+    private static final int[] FIELD_WIDTHS = {20, 11, 19, 19, 19}; // a long, "Progressing", "yyyy-MM-dd HH:mm:ss"
+    private static final int STATE_FIELD = 1;
+    private static final int PROGRESSING_FIELD = 3;
+    private static final int COLLECTED_FIELD = 4;
+    private static final int[] LINE_OFFSETS = new int[HEADER_LABELS.length];  // byte offset of each header line
+    private static final int HEADER_BYTES;                                    // size of the whole header
+
+    static {
+        int offset = 0;
+        for (int i = 0; i < HEADER_LABELS.length; i++) {
+            LINE_OFFSETS[i] = offset;
+            offset += HEADER_LABELS[i].length() + FIELD_WIDTHS[i] + 1; // label, value, '\n'
+        }
+        HEADER_BYTES = offset;
+    }
 
     //Creates a new order file in the specified directory with the given content.
-    public static void createOrderFile(Path dir, int orderId, String orderDetail) throws IOException {
+    public static void createOrderFile(Path dir, long orderId, String orderDetail) throws IOException {
         // FIRST: Make sure the directory exists
         if (!Files.exists(dir)) {
             System.out.println("Creating directory: " + dir);
@@ -58,25 +90,24 @@ public class OrderFileManager {
         System.out.println("Attempting to create order file: " + path);
 
         if(Files.notExists(path)) {
-            Files.createFile(path);
-            try (BufferedWriter writer = Files.newBufferedWriter(path)) {
-                writer.write(orderDetail);
-                writer.newLine();
-                System.out.println("✅ " + path + " created successfully");
+            List<String> lines = orderDetail.lines().toList();
+            byte[] content = fixedLayoutOf(lines);
+            if (content == null) { // not an order header we know, kept as it is
+                content = (orderDetail + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
             }
+            Files.write(path, content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            System.out.println("✅ " + path + " created successfully");
         }
         else{
             System.out.println("⚠️ " + path + " already exists");
         }
     }
 
-
-
     // Updates the order's state and corresponding timestamp, then moves the order file to the new state folder.
     //Ordered state in orders/ordered
     //Progressing state in orders/progressing
     //Collected state in orders/collected
-    public static boolean updateAndMoveOrderFile(int orderId, OrderState newState, Path sourceDir, Path targetDir) throws IOException {
+    public static boolean updateAndMoveOrderFile(long orderId, OrderState newState, Path sourceDir, Path targetDir) throws IOException {
         String orderFileName = String.valueOf(orderId)+".txt";
         Path sourcePath = sourceDir.resolve(orderFileName);
         Path targetPath = targetDir.resolve(orderFileName);
@@ -94,31 +125,57 @@ public class OrderFileManager {
 
     /**
      * Updates the state and timestamp field inside the order file.
+     * A file in the fixed-width layout is patched in place: only the state and timestamp fields are written.
+     * An older file is rewritten once, in the fixed-width layout, through a temporary file.
+     */
+    private static void updateOrderStateAndTime(Path sourceDir, long orderId, OrderState newState) throws IOException {
+        Path sourcePath = sourceDir.resolve(String.valueOf(orderId) + ".txt");
+        String now = LocalDateTime.now().format(dateTimeFormatter);
+        int timeField = timeFieldOf(newState);
+
+        // the channel is closed before the file is moved, some platforms cannot move an open file
+        try (FileChannel channel = FileChannel.open(sourcePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (hasFixedLayout(channel)) {
+                writeField(channel, STATE_FIELD, newState.toString());
+                if (timeField >= 0) {
+                    writeField(channel, timeField, now);
+                }
+                return;
+            }
+        }
+        migrateOrderFile(sourceDir, orderId, newState, timeField, now);
+    }
+
+    /**
+     * Rewrites an order file written before the fixed-width layout, with the state change applied.
+     * A file whose header does not fit the layout is rewritten line by line in its own layout, as before.
      * This method creates a temporary file with the updated content and replaces
      * the original file once updates are complete.
      */
-    private static void updateOrderStateAndTime(Path sourceDir, int orderId, OrderState newState) throws IOException {
+    private static void migrateOrderFile(Path sourceDir, long orderId, OrderState newState, int timeField,
+                                         String now) throws IOException {
         String orderFileName = String.valueOf(orderId)+".txt";
         String tempFileName = String.valueOf(orderId) + "_temp.txt";
         Path sourcePath = sourceDir.resolve(orderFileName);
         Path tempFilePath = sourceDir.resolve(tempFileName);
 
-        try (BufferedReader reader = Files.newBufferedReader(sourcePath, StandardCharsets.UTF_8);
-             BufferedWriter writer = Files.newBufferedWriter(tempFilePath, StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("State")) {
-                    line = "State: " + newState;
-                } else if (newState.equals(OrderState.Progressing) && line.startsWith("ProgressingDateTime")) {
-                    line = "ProgressingDateTime: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                } else if (newState.equals(OrderState.Collected) && line.startsWith("CollectedDateTime")) {
-                    line = "CollectedDateTime: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                }
-                writer.write(line);
-                writer.newLine();
+        List<String> lines = new ArrayList<>(new String(Files.readAllBytes(sourcePath), StandardCharsets.UTF_8).lines().toList());
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.startsWith("State")) {
+                lines.set(i, "State: " + newState);
+            } else if (timeField == PROGRESSING_FIELD && line.startsWith("ProgressingDateTime")) {
+                lines.set(i, "ProgressingDateTime: " + now);
+            } else if (timeField == COLLECTED_FIELD && line.startsWith("CollectedDateTime")) {
+                lines.set(i, "CollectedDateTime: " + now);
             }
         }
+        byte[] content = fixedLayoutOf(lines);
+        if (content == null) {
+            content = (String.join(System.lineSeparator(), lines) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        }
 
+        Files.write(tempFilePath, content);
         // Replace the original file with the updated temp file
         try {
             Files.move(tempFilePath, sourcePath, StandardCopyOption.REPLACE_EXISTING);
@@ -129,13 +186,99 @@ public class OrderFileManager {
     }
 
     //Reads the content of an order file as a single string.
-    public static String readOrderFile(Path dir, int orderId) throws IOException {
+    public static String readOrderFile(Path dir, long orderId) throws IOException {
         String orderFileName = String.valueOf(orderId)+".txt";
         Path path = dir.resolve(orderFileName);
         // Check if the file exists before reading
         if (!Files.exists(path)) {
             throw new IOException("Order file not found: " + path);
         }
-        return String.join("\n", Files.readAllLines(path));
+        return orderTextOf(Files.readAllBytes(path));
+    }
+
+    //Turns the bytes of an order file into the order details, one line per line of the file,
+    //without the padding of the header (also used by OrderArchive for archived order files)
+    static String orderTextOf(byte[] content) {
+        List<String> lines = new ArrayList<>(new String(content, StandardCharsets.UTF_8).lines().toList());
+        for (int i = 0; i < Math.min(HEADER_LABELS.length, lines.size()); i++) {
+            lines.set(i, lines.get(i).stripTrailing());
+        }
+        return String.join("\n", lines);
+    }
+
+    // The header field holding the timestamp of the state, or -1 if the state has none to set
+    private static int timeFieldOf(OrderState state) {
+        return switch (state) {
+            case Progressing -> PROGRESSING_FIELD;
+            case Collected -> COLLECTED_FIELD;
+            case Ordered -> -1; // set when the order is created
+        };
+    }
+
+    /**
+     * Lays out the order details in the fixed-width layout.
+     * @return the file content, or null if the first lines are not an order header or a value is too wide
+     */
+    private static byte[] fixedLayoutOf(List<String> lines) {
+        if (lines.size() < HEADER_LABELS.length) {
+            return null;
+        }
+        StringBuilder content = new StringBuilder(HEADER_BYTES + 64 * (lines.size() - HEADER_LABELS.length));
+        for (int i = 0; i < HEADER_LABELS.length; i++) {
+            String line = lines.get(i);
+            String label = HEADER_LABELS[i];
+            if (!line.startsWith(label.strip())) {
+                return null;
+            }
+            String value = line.substring(label.strip().length()).strip();
+            if (value.length() > FIELD_WIDTHS[i] || !isAscii(value)) { // the field widths are counted in bytes
+                return null;
+            }
+            content.append(label).append(value).append(" ".repeat(FIELD_WIDTHS[i] - value.length())).append('\n');
+        }
+        for (int i = HEADER_LABELS.length; i < lines.size(); i++) {
+            content.append(lines.get(i)).append('\n');
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Whether the file starts with a header in the fixed-width layout, checked by its labels and line ends
+    private static boolean hasFixedLayout(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_BYTES) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return false;
+            }
+        }
+        byte[] bytes = header.array();
+        for (int i = 0; i < HEADER_LABELS.length; i++) {
+            byte[] label = HEADER_LABELS[i].getBytes(StandardCharsets.US_ASCII);
+            for (int j = 0; j < label.length; j++) {
+                if (bytes[LINE_OFFSETS[i] + j] != label[j]) {
+                    return false;
+                }
+            }
+            if (bytes[LINE_OFFSETS[i] + label.length + FIELD_WIDTHS[i]] != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Overwrites one header field in place, padding the value to the field width
+    private static void writeField(FileChannel channel, int field, String value) throws IOException {
+        String padded = value + " ".repeat(FIELD_WIDTHS[field] - value.length());
+        ByteBuffer buffer = ByteBuffer.wrap(padded.getBytes(StandardCharsets.US_ASCII));
+        long position = LINE_OFFSETS[field] + HEADER_LABELS[field].length();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static boolean isAscii(String value) {
+        return value.chars().allMatch(c -> c < 0x80);
     }
 }
@@ -0,0 +1,746 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * OrderJournal is an OrderStore that appends order events to a journal instead of keeping one file per order.
+ *
+ * A new order appends one CREATED record (holding the order details), and each state change appends one
+ * small STATE_CHANGED record. Nothing is ever rewritten or moved, so a state change costs one append
+ * instead of a file rewrite, a rename and a move between folders.
+ *
+ * Layout on disk (orders/journal/):
+ * - The journal is split into segment files, segment-00000001.log, segment-00000002.log, ...
+ *   A new segment is started once the current one reaches segmentBytes
+ *   (happyshop.orders.journal.segmentBytes, default 64 MB).
+ * - A segment starts with an 8-byte header: magic "HSJ2" and the segment number.
+ * - Each record is: body length (int), CRC32C of the body (int), then the body:
+ *   type (byte), state (byte), orderId (long), timestamp in epoch millis (long), payload (UTF-8 order details).
+ *
+ * Crash safety:
+ * - On open every segment is replayed and every record's checksum is verified.
+ * - A crash can only leave a partly written record at the end of the last segment; replay stops at the
+ *   first record that is short or fails its checksum and the segment is truncated there.
+ * - A damaged record in any earlier segment cannot come from a crash. Skipping it would lose the orders
+ *   after it, so open() fails instead and OrderStoreFactory falls back to the order files.
+ * - A failed append is cut off again straight away, so later appends never follow a broken record.
+ * - Every append is forced to disk unless the journal is opened with syncOnAppend false, either with
+ *   -Dhappyshop.orders.journal.sync=false or because OrderPersistenceWriter forces whole batches with sync().
+ *
+ * An in-memory index maps each uncollected orderId to its latest state, the position of its CREATED record
+ * and its state-change times, so lookups never scan the journal. A collected order moves out of the index
+ * to a compact map of where its CREATED record is (segment and offset packed in one long), so it can still
+ * be read back; its state-change times are then found by reading on from that record to its Collected record.
+ * The full index entries, and the work of copying them, grow only with the orders still active.
+ *
+ * Fast startup:
+ * - Every checkpointInterval appends (happyshop.orders.snapshot.interval, default 10000), and on close,
+ *   the index is saved to index.snapshot together with the journal position it covers (see OrderStateSnapshot).
+ *   The position is taken under the append lock, but the index is copied after it is released, so appends
+ *   are not held up while it is copied. The copy may already hold changes appended after the position;
+ *   replaying those records again on open sets the same states, so the result is the same.
+ * - On open the index is loaded from the snapshot and only the records after that position are replayed,
+ *   so startup no longer grows with the length of the journal.
+ * - Without a usable snapshot the whole journal is replayed; the segments are read and checked in
+ *   parallel and then applied in order.
+ */
+
+public class OrderJournal implements OrderStore {
+    private static final int SEGMENT_MAGIC = 0x48534A32; // "HSJ2"
+    private static final int SEGMENT_HEADER_SIZE = 8;    // magic + segment number
+    private static final int RECORD_HEADER_SIZE = 8;     // body length + checksum
+    private static final int BODY_FIXED_SIZE = 18;       // type + state + orderId + timestamp
+    private static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 10000;
+
+    private static final byte CREATED = 1;
+    private static final byte STATE_CHANGED = 2;
+
+    private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Path journalDir;
+    private final long segmentBytes;
+    private final boolean syncOnAppend;
+    private final int checkpointInterval; // appends between snapshots, 0 for snapshots on close only
+    private final Path snapshotPath;
+
+    private final ConcurrentHashMap<Long, IndexEntry> index = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Long> collectedIndex = new ConcurrentHashMap<>(); // orderId -> locationOf()
+    private final ConcurrentHashMap<Integer, FileChannel> segments = new ConcurrentHashMap<>(); // segment number -> channel
+    private final ReentrantLock appendLock = new ReentrantLock(); // one writer at a time, keeps the index in journal order
+    private int currentSegment;
+    private long appendPosition; // end of the current segment
+    private volatile int appendsSinceCheckpoint;
+    private final ReentrantLock checkpointLock = new ReentrantLock(); // one snapshot written at a time
+
+    /**
+     * Where an order stands, as far as the journal knows.
+     * @param state             the latest state
+     * @param segment           the segment holding the CREATED record
+     * @param createdOffset     the position of the CREATED record in that segment
+     * @param progressingMillis when the order moved to Progressing, 0 if not yet (or not known)
+     * @param collectedMillis   when the order was collected, 0 if not yet (or not known)
+     */
+    public record IndexEntry(OrderState state, int segment, long createdOffset,
+                             long progressingMillis, long collectedMillis) {
+        IndexEntry withState(OrderState newState, long timestampMillis) {
+            return switch (newState) {
+                case Progressing -> new IndexEntry(newState, segment, createdOffset, timestampMillis, collectedMillis);
+                case Collected -> new IndexEntry(newState, segment, createdOffset, progressingMillis, timestampMillis);
+                case Ordered -> new IndexEntry(newState, segment, createdOffset, progressingMillis, collectedMillis);
+            };
+        }
+    }
+
+    // A record read back from a segment
+    private record Record(byte type, OrderState state, long orderId, long timestampMillis, byte[] payload) {}
+
+    // A record found by scanSegment, without its payload
+    private record ScannedRecord(byte type, OrderState state, long orderId, long timestampMillis, long position) {}
+
+    // The result of reading one segment: its channel, whether its header is valid, its intact records,
+    // and where they end
+    private record SegmentScan(FileChannel channel, boolean validHeader, List<ScannedRecord> records,
+                               long endPosition, long size) {}
+
+    private OrderJournal(Path journalDir, long segmentBytes, boolean syncOnAppend, int checkpointInterval) {
+        this.journalDir = journalDir;
+        this.segmentBytes = segmentBytes;
+        this.syncOnAppend = syncOnAppend;
+        this.checkpointInterval = Math.max(0, checkpointInterval);
+        this.snapshotPath = journalDir.resolve("index.snapshot");
+    }
+
+    public static OrderJournal open(Path journalDir, long segmentBytes, boolean syncOnAppend) throws IOException {
+        return open(journalDir, segmentBytes, syncOnAppend, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Opens the journal in the given folder, creating it if needed, and rebuilds the index from the
+     * latest snapshot and the records appended after it, or by replaying the whole journal.
+     */
+    public static OrderJournal open(Path journalDir, long segmentBytes, boolean syncOnAppend,
+                                    int checkpointInterval) throws IOException {
+        OrderJournal journal = new OrderJournal(journalDir, segmentBytes, syncOnAppend, checkpointInterval);
+        Files.createDirectories(journalDir);
+        List<Integer> segmentNumbers = journal.listSegments();
+        long start = System.nanoTime();
+        boolean fromSnapshot = false;
+        try {
+            OrderStateSnapshot snapshot = OrderStateSnapshot.read(journal.snapshotPath);
+            if (snapshot != null) {
+                fromSnapshot = journal.restoreFromSnapshot(snapshot, segmentNumbers);
+            }
+            if (!fromSnapshot) {
+                journal.replayAll(segmentNumbers);
+            }
+            if (segmentNumbers.isEmpty()) {
+                journal.startSegment(1);
+            }
+        } catch (IOException e) {
+            journal.closeChannels();
+            throw e;
+        }
+        System.out.println("Order journal opened: " + journal.index.size() + " orders in "
+                + journal.segments.size() + " segments, " + (fromSnapshot ? "from its snapshot" : "fully replayed")
+                + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return journal;
+    }
+
+    public void createOrder(long orderId, String orderDetail) throws IOException {
+        appendLock.lock();
+        try {
+            if (index.containsKey(orderId) || collectedIndex.containsKey(orderId)) {
+                System.out.println("⚠️ Order " + orderId + " already exists in the journal");
+                return;
+            }
+            long offset = append(CREATED, OrderState.Ordered, orderId, System.currentTimeMillis(),
+                    orderDetail.getBytes(StandardCharsets.UTF_8));
+            index.put(orderId, new IndexEntry(OrderState.Ordered, currentSegment, offset, 0, 0));
+            appendsSinceCheckpoint++;
+        } finally {
+            appendLock.unlock();
+        }
+        checkpointIfDue();
+    }
+
+    public boolean updateOrderState(long orderId, OrderState newState) throws IOException {
+        return updateOrderState(orderId, newState, System.currentTimeMillis());
+    }
+
+    private boolean updateOrderState(long orderId, OrderState newState, long timestampMillis) throws IOException {
+        appendLock.lock();
+        try {
+            IndexEntry entry = index.get(orderId);
+            if (entry == null) {
+                System.out.println("Order " + orderId + " not found in the journal");
+                return false;
+            }
+            if (entry.state() == newState) {
+                return false;
+            }
+            append(STATE_CHANGED, newState, orderId, timestampMillis, new byte[0]);
+            if (newState == OrderState.Collected) {
+                collect(orderId, entry); // finished, only its location is kept
+            } else {
+                index.put(orderId, entry.withState(newState, timestampMillis));
+            }
+            appendsSinceCheckpoint++;
+        } finally {
+            appendLock.unlock();
+        }
+        checkpointIfDue();
+        return true;
+    }
+
+    public String readOrder(long orderId) throws IOException {
+        IndexEntry entry = index.get(orderId);
+        if (entry == null) {
+            Long location = collectedIndex.get(orderId);
+            if (location == null) {
+                throw new IOException("Order not found in the journal: " + orderId);
+            }
+            entry = collectedEntryOf(orderId, segmentOf(location), offsetOf(location));
+        }
+        Record record = readRecord(openSegment(entry.segment()), entry.createdOffset());
+        if (record == null || record.type() != CREATED || record.orderId() != orderId) {
+            throw new IOException("Journal record of order " + orderId + " is damaged");
+        }
+        return withCurrentState(new String(record.payload(), StandardCharsets.UTF_8), entry);
+    }
+
+    /**
+     * Rebuilds the full index entry of a collected order by reading on from its CREATED record to its
+     * Collected record. Only done when a collected order is read back, which is rare.
+     */
+    private IndexEntry collectedEntryOf(long orderId, int segment, long createdOffset) throws IOException {
+        long progressingMillis = 0;
+        int segmentNumber = segment;
+        long position = createdOffset;
+        FileChannel channel;
+        while ((channel = segments.get(segmentNumber)) != null) {
+            Record record;
+            while ((record = readRecord(channel, position)) != null) {
+                position += RECORD_HEADER_SIZE + BODY_FIXED_SIZE + record.payload().length;
+                if (record.orderId() != orderId || record.type() != STATE_CHANGED) continue;
+                if (record.state() == OrderState.Progressing) {
+                    progressingMillis = record.timestampMillis();
+                } else if (record.state() == OrderState.Collected) {
+                    return new IndexEntry(OrderState.Collected, segment, createdOffset,
+                            progressingMillis, record.timestampMillis());
+                }
+            }
+            segmentNumber++;
+            position = SEGMENT_HEADER_SIZE;
+        }
+        return new IndexEntry(OrderState.Collected, segment, createdOffset, progressingMillis, 0); // time not found
+    }
+
+    private FileChannel openSegment(int segmentNumber) throws IOException {
+        FileChannel channel = segments.get(segmentNumber);
+        if (channel == null) {
+            throw new IOException("Journal segment " + segmentNumber + " is not open");
+        }
+        return channel;
+    }
+
+    // Moves a collected order from the index to collectedIndex
+    private void collect(long orderId, IndexEntry entry) {
+        collectedIndex.put(orderId, locationOf(entry.segment(), entry.createdOffset()));
+        index.remove(orderId);
+    }
+
+    // A segment number and an offset in it, packed in one long (offsets stay below 2^40, 1 TB)
+    private static long locationOf(int segment, long offset) {
+        return ((long) segment << 40) | offset;
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 40);
+    }
+
+    private static long offsetOf(long location) {
+        return location & ((1L << 40) - 1);
+    }
+
+    public TreeMap<Long, OrderState> loadActiveOrders() {
+        TreeMap<Long, OrderState> activeOrders = new TreeMap<>();
+        for (Map.Entry<Long, IndexEntry> entry : index.entrySet()) {
+            if (entry.getValue().state() != OrderState.Collected) {
+                activeOrders.put(entry.getKey(), entry.getValue().state());
+            }
+        }
+        return activeOrders;
+    }
+
+    //The index entry of an uncollected order, or null if the journal does not know it or it was collected
+    //(a collected order can still be read with readOrder)
+    public IndexEntry getIndexEntry(long orderId) {
+        return index.get(orderId);
+    }
+
+    //Number of uncollected orders in the journal
+    public int size() {
+        return index.size();
+    }
+
+    //Whether nothing has ever been written to the journal
+    public boolean isEmpty() {
+        appendLock.lock();
+        try {
+            return segments.size() <= 1 && currentSegment <= 1 && appendPosition <= SEGMENT_HEADER_SIZE;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Copies the uncollected orders of the legacy file-per-order layout into the journal.
+     * Used once, when the journal is first created next to existing order folders.
+     * Their progressing time is kept from the file, as the journal does not know it.
+     *
+     * @return the number of orders imported
+     */
+    public int importLegacyOrders(Path orderedPath, Path progressingPath) throws IOException {
+        int imported = 0;
+        for (Path dir : new Path[]{orderedPath, progressingPath}) {
+            for (long orderId : FileOrderStore.orderIdsIn(dir)) {
+                createOrder(orderId, OrderFileManager.readOrderFile(dir, orderId));
+                if (dir.equals(progressingPath)) {
+                    updateOrderState(orderId, OrderState.Progressing, 0); // 0: keep the time written in the file
+                }
+                imported++;
+            }
+        }
+        if (imported > 0) {
+            System.out.println(imported + " legacy order files imported into the order journal");
+        }
+        return imported;
+    }
+
+    //Forces the current segment to disk; full segments are forced when the next one is started
+    @Override
+    public void sync() throws IOException {
+        appendLock.lock();
+        try {
+            FileChannel channel = segments.get(currentSegment);
+            if (channel != null) {
+                channel.force(false);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Saves the index to the snapshot, with the journal position it covers.
+     * Only the position is read under the append lock. The index is copied afterwards (its entries are
+     * immutable), then the current segment is forced, so the snapshot never holds a change that is not on disk.
+     */
+    public void checkpoint() throws IOException {
+        checkpointLock.lock();
+        try {
+            int segment;
+            long position;
+            appendLock.lock();
+            try {
+                if (segments.get(currentSegment) == null) {
+                    return; // closed
+                }
+                segment = currentSegment;
+                position = appendPosition;
+                appendsSinceCheckpoint = 0;
+            } finally {
+                appendLock.unlock();
+            }
+            List<OrderStateSnapshot.Entry> entries = new ArrayList<>(index.size());
+            for (Map.Entry<Long, IndexEntry> entry : index.entrySet()) {
+                IndexEntry e = entry.getValue();
+                entries.add(new OrderStateSnapshot.Entry(entry.getKey(), e.state(), e.segment(),
+                        e.createdOffset(), e.progressingMillis(), e.collectedMillis()));
+            }
+            List<OrderStateSnapshot.CollectedEntry> collected = new ArrayList<>(collectedIndex.size());
+            for (Map.Entry<Long, Long> entry : collectedIndex.entrySet()) {
+                long location = entry.getValue();
+                collected.add(new OrderStateSnapshot.CollectedEntry(entry.getKey(), segmentOf(location),
+                        offsetOf(location)));
+            }
+            sync(); // the copy may hold appends made after the position, they must be on disk too
+            OrderStateSnapshot.write(snapshotPath, new OrderStateSnapshot(segment, position, entries, collected));
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    // Takes a snapshot once enough has been appended, unless another thread is already taking one
+    private void checkpointIfDue() {
+        if (checkpointInterval > 0 && appendsSinceCheckpoint >= checkpointInterval && checkpointLock.tryLock()) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                System.out.println("Failed to write the order journal snapshot: " + e.getMessage());
+            } finally {
+                checkpointLock.unlock();
+            }
+        }
+    }
+
+    //Saves a snapshot for the next start, then closes the segments
+    @Override
+    public void close() throws IOException {
+        try {
+            checkpoint();
+        } finally {
+            closeChannels();
+        }
+    }
+
+    private void closeChannels() throws IOException {
+        appendLock.lock();
+        try {
+            for (FileChannel channel : segments.values()) {
+                channel.close();
+            }
+            segments.clear();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Appends one record to the current segment, rolling to a new segment when it is full.
+    // Must hold appendLock. Returns the position of the record in the current segment.
+    private long append(byte type, OrderState state, long orderId, long timestampMillis, byte[] payload)
+            throws IOException {
+        int bodyLength = BODY_FIXED_SIZE + payload.length;
+        if (bodyLength > MAX_BODY_SIZE) {
+            throw new IOException("Order " + orderId + " is too large for the journal: " + bodyLength + " bytes");
+        }
+        ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        body.put(type).put((byte) state.ordinal()).putLong(orderId).putLong(timestampMillis).put(payload);
+        body.flip();
+        CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bodyLength);
+        record.putInt(bodyLength).putInt((int) crc.getValue()).put(body);
+        record.flip();
+
+        if (appendPosition + record.remaining() > segmentBytes && appendPosition > SEGMENT_HEADER_SIZE) {
+            startSegment(currentSegment + 1);
+        }
+
+        FileChannel channel = segments.get(currentSegment);
+        long offset = appendPosition;
+        try {
+            writeFully(channel, record, offset);
+            if (syncOnAppend) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(offset); // never leave a broken record in front of the next one
+            } catch (IOException truncateFailure) {
+                System.out.println("Failed to cut off a failed journal append: " + truncateFailure.getMessage());
+            }
+            throw e;
+        }
+        appendPosition = offset + RECORD_HEADER_SIZE + bodyLength;
+        return offset;
+    }
+
+    // Creates a new, empty segment and makes it the one appended to
+    private void startSegment(int segmentNumber) throws IOException {
+        FileChannel previous = segments.get(currentSegment);
+        if (previous != null) {
+            previous.force(true); // the full segment is finished, make sure it is all on disk
+        }
+        FileChannel channel = FileChannel.open(segmentPath(segmentNumber), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(0);
+        writeFully(channel, segmentHeader(segmentNumber), 0);
+        channel.force(true);
+        segments.put(segmentNumber, channel);
+        currentSegment = segmentNumber;
+        appendPosition = SEGMENT_HEADER_SIZE;
+    }
+
+    /**
+     * Loads the index from a snapshot and replays only the records appended after the position it covers.
+     * Returns false, with nothing loaded, if the snapshot does not match the segments on disk;
+     * the whole journal is then replayed instead.
+     */
+    private boolean restoreFromSnapshot(OrderStateSnapshot snapshot, List<Integer> segmentNumbers) throws IOException {
+        int snapshotSegmentIndex = segmentNumbers.indexOf(snapshot.segment());
+        if (snapshotSegmentIndex < 0 || snapshot.position() < SEGMENT_HEADER_SIZE
+                || Files.size(segmentPath(snapshot.segment())) < snapshot.position()) {
+            System.out.println("The order journal snapshot does not match the journal, replaying the whole journal");
+            return false;
+        }
+        if (snapshot.collected() == null) {
+            System.out.println("The order journal snapshot has no collected orders, replaying the whole journal");
+            return false;
+        }
+        for (OrderStateSnapshot.Entry e : snapshot.entries()) {
+            if (e.state() == OrderState.Collected) {
+                collectedIndex.put(e.orderId(), locationOf(e.segment(), e.createdOffset()));
+            } else {
+                index.put(e.orderId(), new IndexEntry(e.state(), e.segment(), e.createdOffset(),
+                        e.progressingMillis(), e.collectedMillis()));
+            }
+        }
+        for (OrderStateSnapshot.CollectedEntry e : snapshot.collected()) {
+            collectedIndex.put(e.orderId(), locationOf(e.segment(), e.createdOffset()));
+        }
+        for (int i = 0; i < segmentNumbers.size(); i++) {
+            int segmentNumber = segmentNumbers.get(i);
+            boolean isLast = i == segmentNumbers.size() - 1;
+            if (i < snapshotSegmentIndex) {
+                // already covered by the snapshot, only opened for reading orders back
+                applyScan(segmentNumber, scanSegment(segmentNumber, -1), isLast);
+            } else {
+                long from = i == snapshotSegmentIndex ? snapshot.position() : SEGMENT_HEADER_SIZE;
+                applyScan(segmentNumber, scanSegment(segmentNumber, from), isLast);
+            }
+        }
+        return true;
+    }
+
+    // Rebuilds the index from every segment. The segments are read and checked in parallel, then applied in order.
+    private void replayAll(List<Integer> segmentNumbers) throws IOException {
+        List<CompletableFuture<SegmentScan>> scans = new ArrayList<>();
+        for (int segmentNumber : segmentNumbers) {
+            scans.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return scanSegment(segmentNumber, SEGMENT_HEADER_SIZE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        IOException failure = null;
+        for (int i = 0; i < segmentNumbers.size(); i++) {
+            SegmentScan scan;
+            try {
+                scan = scans.get(i).join(); // every scan is waited for, so no channel is left open
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof UncheckedIOException u ? u.getCause()
+                            : new IOException("Failed to read the order journal", e.getCause());
+                }
+                continue;
+            }
+            if (failure != null) {
+                scan.channel().close(); // an earlier segment failed, the journal will not be opened
+                continue;
+            }
+            try {
+                applyScan(segmentNumbers.get(i), scan, i == segmentNumbers.size() - 1);
+            } catch (IOException e) {
+                failure = e; // the channel is in segments and is closed with the others
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Reads the intact records of one segment from a position, without changing the journal.
+     * Safe to run for several segments at once. A position of -1 only opens the segment and checks its header.
+     */
+    private SegmentScan scanSegment(int segmentNumber, long from) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(segmentNumber), StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size < SEGMENT_HEADER_SIZE || !hasValidHeader(channel, segmentNumber)) {
+            return new SegmentScan(channel, false, List.of(), SEGMENT_HEADER_SIZE, size);
+        }
+        if (from < 0) {
+            return new SegmentScan(channel, true, List.of(), size, size);
+        }
+        List<ScannedRecord> records = new ArrayList<>();
+        long position = from;
+        Record record;
+        while ((record = readRecord(channel, position)) != null) {
+            records.add(new ScannedRecord(record.type(), record.state(), record.orderId(),
+                    record.timestampMillis(), position));
+            position += RECORD_HEADER_SIZE + BODY_FIXED_SIZE + record.payload().length;
+        }
+        return new SegmentScan(channel, true, records, position, size);
+    }
+
+    // Applies a scanned segment to the index, in journal order. The last segment is truncated after its last good record.
+    private void applyScan(int segmentNumber, SegmentScan scan, boolean isLast) throws IOException {
+        FileChannel channel = scan.channel();
+        segments.put(segmentNumber, channel);
+
+        if (!scan.validHeader()) {
+            if (!isLast) {
+                throw new IOException("Journal segment " + segmentNumber + " has no valid header");
+            }
+            System.out.println("Journal segment " + segmentNumber + " was not finished, starting it again");
+            segments.remove(segmentNumber);
+            channel.close();
+            startSegment(segmentNumber);
+            return;
+        }
+
+        for (ScannedRecord record : scan.records()) {
+            apply(record, segmentNumber);
+        }
+
+        long position = scan.endPosition();
+        long size = scan.size();
+        if (position < size) {
+            if (isLast) {
+                System.out.println("Journal segment " + segmentNumber + " has a torn tail, truncating "
+                        + (size - position) + " bytes");
+                channel.truncate(position);
+                channel.force(true);
+            } else {
+                // only the end of the last segment can be torn by a crash: damage anywhere else would silently
+                // lose committed orders, so the journal is not opened and the factory falls back to order files
+                throw new IOException("Journal segment " + segmentNumber + " is damaged at " + position
+                        + " (" + (size - position) + " bytes unreadable), the journal needs repair");
+            }
+        }
+        if (isLast) {
+            currentSegment = segmentNumber;
+            appendPosition = position;
+        }
+    }
+
+    private void apply(ScannedRecord record, int segmentNumber) {
+        if (record.type() == CREATED) {
+            index.put(record.orderId(), new IndexEntry(OrderState.Ordered, segmentNumber, record.position(), 0, 0));
+        } else if (record.type() == STATE_CHANGED) {
+            IndexEntry entry = index.get(record.orderId());
+            if (entry == null) {
+                return; // already collected (replayed again after a snapshot) or never created
+            }
+            if (record.state() == OrderState.Collected) {
+                collect(record.orderId(), entry);
+            } else {
+                index.put(record.orderId(), entry.withState(record.state(), record.timestampMillis()));
+            }
+        }
+    }
+
+    // Reads the record at the position, or returns null if there is no complete, intact record there
+    private static Record readRecord(FileChannel channel, long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        if (!readFully(channel, header, position)) return null;
+        header.flip();
+        int bodyLength = header.getInt();
+        int checksum = header.getInt();
+        if (bodyLength < BODY_FIXED_SIZE || bodyLength > MAX_BODY_SIZE) return null;
+
+        ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        if (!readFully(channel, body, position + RECORD_HEADER_SIZE)) return null;
+        body.flip();
+        CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != checksum) return null;
+
+        byte type = body.get();
+        int stateOrdinal = body.get();
+        if (stateOrdinal < 0 || stateOrdinal >= OrderState.values().length) return null;
+        long orderId = body.getLong();
+        long timestampMillis = body.getLong();
+        byte[] payload = new byte[body.remaining()];
+        body.get(payload);
+        return new Record(type, OrderState.values()[stateOrdinal], orderId, timestampMillis, payload);
+    }
+
+    // Writes the order details with the State line and state-change times taken from the index
+    private static String withCurrentState(String orderDetail, IndexEntry entry) {
+        String[] lines = orderDetail.split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].startsWith("State")) {
+                lines[i] = "State: " + entry.state();
+            } else if (lines[i].startsWith("ProgressingDateTime") && entry.progressingMillis() > 0) {
+                lines[i] = "ProgressingDateTime: " + formatMillis(entry.progressingMillis());
+            } else if (lines[i].startsWith("CollectedDateTime") && entry.collectedMillis() > 0) {
+                lines[i] = "CollectedDateTime: " + formatMillis(entry.collectedMillis());
+            }
+        }
+        return String.join("\n", lines);
+    }
+
+    private static String formatMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()).format(dateTimeFormatter);
+    }
+
+    private boolean hasValidHeader(FileChannel channel, int segmentNumber) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        if (!readFully(channel, header, 0)) return false;
+        header.flip();
+        return header.getInt() == SEGMENT_MAGIC && header.getInt() == segmentNumber;
+    }
+
+    private static ByteBuffer segmentHeader(int segmentNumber) {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC).putInt(segmentNumber);
+        header.flip();
+        return header;
+    }
+
+    private Path segmentPath(int segmentNumber) {
+        return journalDir.resolve(String.format("segment-%08d.log", segmentNumber));
+    }
+
+    // Segment numbers found in the journal folder, in order
+    private List<Integer> listSegments() throws IOException {
+        List<Integer> segmentNumbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(journalDir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.matches("segment-\\d{8}\\.log")) {
+                    segmentNumbers.add(Integer.parseInt(name.substring(8, 16)));
+                }
+            }
+        }
+        segmentNumbers.sort(null);
+        return segmentNumbers;
+    }
+
+    // Returns false if the end of the file is reached first
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) return false;
+        }
+        return true;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, start + buffer.position());
+        }
+    }
+}
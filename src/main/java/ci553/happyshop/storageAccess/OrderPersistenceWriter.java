@@ -0,0 +1,363 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OrderPersistenceWriter is an OrderStore decorator that takes order writes off the caller's thread.
+ * OrderHub.newOrder runs on the thread that handled the checkout (the JavaFX thread), so without it
+ * every checkout and every picker action waited for the disk.
+ *
+ * How it works:
+ * - createOrder() and updateOrderState() put the write on a bounded queue (happyshop.orders.writer.queueSize,
+ *   default 1024). When the queue is full the caller waits for room, so memory stays bounded.
+ * - One writer thread takes the first waiting write, drains up to maxBatchSize more, writes them all to the
+ *   store in queue order and then, if syncing, forces the whole batch to disk with a single sync().
+ * - When the caller is released depends on the durability policy (happyshop.orders.durability):
+ *     enqueue  (default) as soon as the write is queued; checkout never waits for the disk
+ *     write    once the write has been handed to the store (in the OS page cache)
+ *     fsync    once the batch holding the write has been forced to disk
+ * - readOrder() waits for the pending writes of that order first, so an order can always be read back
+ *   straight after it was created.
+ * - flush() waits until everything queued so far is written and synced. It is called on shutdown
+ *   (OrderHub.shutdown, from EmergencyExit and a JVM shutdown hook), so queued orders are not lost on exit.
+ *
+ * - A write that fails after its caller was released (always the case with the enqueue policy) is reported
+ *   to the FailureListener, so OrderHub can stop offering an order that was never saved.
+ *   A write that reached the store but whose batch could not be forced to disk is reported separately,
+ *   as not synced: it is in the store and readable, only not yet safe from a crash.
+ *
+ * With the enqueue policy a crash (not a normal exit) can lose the writes still in the queue.
+ */
+
+public class OrderPersistenceWriter implements OrderStore {
+
+    public enum Durability {
+        ENQUEUE, WRITE, FSYNC;
+
+        public static Durability parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Unknown order durability '" + value + "', using enqueue");
+                return ENQUEUE;
+            }
+        }
+    }
+
+    // One queued write. action is null for the marker used by flush().
+    // written completes once it is handed to the store, synced once it is on disk (or not synced at all).
+    private record Write(long orderId, boolean creation, StoreAction action, CompletableFuture<Void> written,
+                         CompletableFuture<Void> synced) {}
+
+    @FunctionalInterface
+    private interface StoreAction {
+        void apply(OrderStore store) throws IOException;
+    }
+
+    /**
+     * Told about every write the store failed. Called on the writer thread, so it must not wait for the writer.
+     */
+    @FunctionalInterface
+    public interface FailureListener {
+        /**
+         * @param orderId  the order that was not written
+         * @param creation true if the order itself was not created, false if a state change was not stored
+         * @param cause    why the store failed
+         */
+        void writeFailed(long orderId, boolean creation, IOException cause);
+
+        /**
+         * The write is in the store, but the sync after its batch failed, so a crash may still lose it.
+         * @param orderId the order that was written
+         * @param cause   why the sync failed
+         */
+        default void writeNotSynced(long orderId, IOException cause) { }
+    }
+
+    // Queued by close() to stop the writer thread once everything before it is written
+    private static final Write STOP = new Write(-1, false, null, new CompletableFuture<>(), new CompletableFuture<>());
+
+    private final OrderStore store;
+    private final Durability durability;
+    private final boolean syncBatches;
+    private final int maxBatchSize;
+    private final BlockingQueue<Write> queue;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private volatile FailureListener failureListener = (orderId, creation, cause) -> { };
+
+    // the latest pending write of each order (its written future), so readOrder can wait for it
+    private final ConcurrentHashMap<Long, CompletableFuture<Void>> pendingByOrder = new ConcurrentHashMap<>();
+
+    // statistics
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder writeCount = new LongAdder();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+
+    /**
+     * @param store        the store to write to, opened without a sync on every append
+     * @param durability   when createOrder and updateOrderState return
+     * @param queueSize    most writes waiting at once
+     * @param maxBatchSize most writes per batch (and per sync)
+     * @param syncBatches  force each batch to disk; always true for the fsync policy
+     */
+    public OrderPersistenceWriter(OrderStore store, Durability durability, int queueSize, int maxBatchSize,
+                                  boolean syncBatches) {
+        this.store = store;
+        this.durability = durability;
+        this.syncBatches = syncBatches || durability == Durability.FSYNC;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        writerThread = new Thread(this::writeLoop, "order-persistence-writer");
+        writerThread.setDaemon(true); // must not keep the JVM alive, shutdown calls flush() instead
+        writerThread.start();
+    }
+
+    public void setFailureListener(FailureListener failureListener) {
+        this.failureListener = failureListener;
+    }
+
+    public void createOrder(long orderId, String orderDetail) throws IOException {
+        submit(orderId, true, store -> store.createOrder(orderId, orderDetail));
+    }
+
+    /**
+     * Queues the state change. Returns true once it is accepted: whether the store knew the order
+     * is only found out by the writer, which reports it on the console.
+     */
+    public boolean updateOrderState(long orderId, OrderState newState) throws IOException {
+        submit(orderId, false, store -> {
+            if (!store.updateOrderState(orderId, newState)) {
+                System.out.println("Order " + orderId + " could not be moved to " + newState + " in the order store");
+            }
+        });
+        return true;
+    }
+
+    public String readOrder(long orderId) throws IOException {
+        CompletableFuture<Void> pending = pendingByOrder.get(orderId);
+        if (pending != null) {
+            await(pending); // in the store once written, whether or not it was synced
+        }
+        return store.readOrder(orderId);
+    }
+
+    public TreeMap<Long, OrderState> loadActiveOrders() throws IOException {
+        flush();
+        return store.loadActiveOrders();
+    }
+
+    //Waits until every write queued so far is in the store and, if syncing, on disk
+    public void flush() throws IOException {
+        if (!running) {
+            return;
+        }
+        Write marker = new Write(-1, false, null, new CompletableFuture<>(), new CompletableFuture<>());
+        enqueue(marker);
+        await(marker.synced());
+    }
+
+    @Override
+    public void sync() throws IOException {
+        flush();
+    }
+
+    //Writes out everything still queued, stops the writer thread and closes the store
+    @Override
+    public void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        IOException flushFailure = null;
+        try {
+            flush();
+        } catch (IOException e) {
+            flushFailure = e; // still stopped and closed, then reported
+        }
+        running = false; // no more writes are accepted
+        // stopped with a marker rather than an interrupt: an interrupt during a write or force would
+        // close the store's FileChannel (ClosedByInterruptException) just before store.close() needs it
+        try {
+            queue.put(STOP);
+            writerThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // writes queued after the flush are failed rather than left waiting forever
+        Write write;
+        while ((write = queue.poll()) != null) {
+            IOException closed = new IOException("Order persistence writer closed");
+            write.written().completeExceptionally(closed);
+            write.synced().completeExceptionally(closed);
+            pendingByOrder.remove(write.orderId(), write.written());
+        }
+        store.close();
+        if (flushFailure != null) {
+            throw flushFailure;
+        }
+    }
+
+    public WriterStats getStats() {
+        return new WriterStats(batchCount.sum(), writeCount.sum(), largestBatch.get(), queue.size());
+    }
+
+    private void submit(long orderId, boolean creation, StoreAction action) throws IOException {
+        Write write = new Write(orderId, creation, action, new CompletableFuture<>(), new CompletableFuture<>());
+        CompletableFuture<Void> previous = pendingByOrder.put(orderId, write.written());
+        try {
+            enqueue(write);
+        } catch (IOException e) {
+            // never queued: fail it, so nobody waits for it, and let readOrder wait for the earlier write again
+            write.written().completeExceptionally(e);
+            write.synced().completeExceptionally(e);
+            if (previous != null && !previous.isDone()) {
+                pendingByOrder.replace(orderId, write.written(), previous);
+            } else {
+                pendingByOrder.remove(orderId, write.written());
+            }
+            throw e;
+        }
+        switch (durability) {
+            case ENQUEUE -> { } // released straight away, the writer reports failures
+            case WRITE -> await(write.written());
+            case FSYNC -> await(write.synced());
+        }
+    }
+
+    private void enqueue(Write write) throws IOException {
+        if (!running) {
+            throw new IOException("Order persistence writer is closed");
+        }
+        try {
+            queue.put(write); // waits while the queue is full
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queueing an order write", e);
+        }
+    }
+
+    private static void await(CompletableFuture<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an order write", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Order write failed", e.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        List<Write> batch = new ArrayList<>();
+        boolean stopped = false;
+        while (!stopped) {
+            try {
+                batch.add(queue.take()); // wait for the first write of the next batch
+                queue.drainTo(batch, maxBatchSize - 1);
+                stopped = batch.remove(STOP); // queued last by close(), after every accepted write
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                break; // not used to stop the writer, but never ignored
+            } catch (RuntimeException e) {
+                // never let the writer thread die, every waiting caller would hang
+                for (Write write : batch) {
+                    write.written().completeExceptionally(e);
+                    write.synced().completeExceptionally(e);
+                }
+            } finally {
+                for (Write write : batch) {
+                    pendingByOrder.remove(write.orderId(), write.written());
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<Write> batch) {
+        List<Write> written = new ArrayList<>();
+        for (Write write : batch) {
+            if (write.action() == null) { // flush marker
+                written.add(write);
+                continue;
+            }
+            try {
+                write.action().apply(store);
+                write.written().complete(null);
+                written.add(write);
+            } catch (IOException e) {
+                System.out.println("Failed to store order " + write.orderId() + ": " + e.getMessage());
+                write.written().completeExceptionally(e);
+                write.synced().completeExceptionally(e);
+                reportFailure(write, e);
+            }
+        }
+
+        if (syncBatches && !written.isEmpty()) { // empty when the batch was only the STOP marker
+            try {
+                store.sync(); // one sync for the whole batch
+            } catch (IOException e) {
+                System.out.println("Failed to force " + written.size() + " order writes to disk: " + e.getMessage());
+                for (Write write : written) {
+                    write.written().complete(null); // the flush marker has no store write
+                    write.synced().completeExceptionally(e);
+                    if (write.action() != null) {
+                        reportNotSynced(write, e);
+                    }
+                }
+                return;
+            }
+        }
+        for (Write write : written) {
+            write.written().complete(null); // the flush marker has no store write
+            write.synced().complete(null);
+        }
+
+        batchCount.increment();
+        writeCount.add(batch.size());
+        largestBatch.accumulateAndGet(batch.size(), Math::max);
+    }
+
+    private void reportFailure(Write write, IOException cause) {
+        try {
+            failureListener.writeFailed(write.orderId(), write.creation(), cause);
+        } catch (RuntimeException e) {
+            e.printStackTrace(); // a broken listener must not stop the writer
+        }
+    }
+
+    private void reportNotSynced(Write write, IOException cause) {
+        try {
+            failureListener.writeNotSynced(write.orderId(), cause);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A snapshot of the writer counters.
+     * @param batches      batches written
+     * @param writes       order writes (and flush markers) in those batches
+     * @param largestBatch most writes in one batch
+     * @param queued       writes waiting right now
+     */
+    public record WriterStats(long batches, long writes, int largestBatch, int queued) {
+        public double averageBatchSize() {
+            return batches == 0 ? 0 : (double) writes / batches;
+        }
+    }
+}
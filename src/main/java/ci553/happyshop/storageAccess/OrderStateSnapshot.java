@@ -0,0 +1,175 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * OrderStateSnapshot is a compact binary copy of where every order stands, so the order stores can start
+ * without reading every order again:
+ * - OrderJournal saves its index with the journal position it covers, and on startup only replays the
+ *   records appended after that position (orders/journal/index.snapshot).
+ * - FileOrderStore saves its uncollected orders, and on startup only lists the order folders that
+ *   changed after the snapshot was written (orders/orderState.snapshot).
+ *
+ * File layout (big-endian):
+ *   magic "HSS2" (int), segment (int), position (long), entry count (int),
+ *   then per entry: orderId (long), state (byte), segment (int), createdOffset (long),
+ *                   progressingMillis (long), collectedMillis (long),
+ *   then the collected count (int) and per collected order: orderId (long), segment (int), createdOffset (long),
+ *   and finally the CRC32C of everything before it (int).
+ * A snapshot in the older "HSS1" layout has no collected section; read() returns it with collected null.
+ *
+ * The file is streamed in both directions, so its size is only limited by the number of entries.
+ * A snapshot is written to a temp file, forced to disk and then renamed over the old one, so a crash
+ * leaves either the old or the new snapshot. A missing or damaged snapshot is simply ignored by read(),
+ * and the store falls back to a full scan.
+ *
+ * @param segment  the journal segment the snapshot covers up to (0 for FileOrderStore)
+ * @param position the position in that segment the snapshot covers up to (0 for FileOrderStore)
+ * @param entries   the orders
+ * @param collected where the collected orders are in the journal (empty for FileOrderStore),
+ *                  null if the snapshot was read from the older layout
+ */
+
+public record OrderStateSnapshot(int segment, long position, List<Entry> entries, List<CollectedEntry> collected) {
+    private static final int MAGIC = 0x48535332;        // "HSS2"
+    private static final int MAGIC_V1 = 0x48535331;     // "HSS1", without the collected section
+    private static final int HEADER_SIZE = 20;          // magic + segment + position + count
+    private static final int ENTRY_SIZE = 37;           // orderId + state + segment + createdOffset + 2 timestamps
+    private static final int COLLECTED_ENTRY_SIZE = 20; // orderId + segment + createdOffset
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * One order in the snapshot. segment and createdOffset locate its CREATED record in the journal,
+     * and are 0 for FileOrderStore, as are timestamps that are not known.
+     */
+    public record Entry(long orderId, OrderState state, int segment, long createdOffset,
+                        long progressingMillis, long collectedMillis) {}
+
+    /**
+     * A collected order: only where its CREATED record is, so it can still be read back.
+     */
+    public record CollectedEntry(long orderId, int segment, long createdOffset) {}
+
+    //Writes the snapshot, replacing any earlier one at the path.
+    //The entries are streamed through a small buffer, so the snapshot is never held in memory as one block.
+    public static void write(Path path, OrderStateSnapshot snapshot) throws IOException {
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32C crc = new CRC32C();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(snapshot.segment());
+            out.writeLong(snapshot.position());
+            out.writeInt(snapshot.entries().size());
+            for (Entry entry : snapshot.entries()) {
+                out.writeLong(entry.orderId());
+                out.writeByte(entry.state().ordinal());
+                out.writeInt(entry.segment());
+                out.writeLong(entry.createdOffset());
+                out.writeLong(entry.progressingMillis());
+                out.writeLong(entry.collectedMillis());
+            }
+            out.writeInt(snapshot.collected().size());
+            for (CollectedEntry entry : snapshot.collected()) {
+                out.writeLong(entry.orderId());
+                out.writeInt(entry.segment());
+                out.writeLong(entry.createdOffset());
+            }
+            out.writeInt((int) crc.getValue()); // the CRC of everything before it
+            out.flush(); // not closed: that would close the channel before it is forced
+            channel.force(true);
+        }
+        try {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a snapshot, streaming it through a small buffer.
+     * @return the snapshot, or null if there is none or it is damaged
+     */
+    public static OrderStateSnapshot read(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4) {
+                System.out.println("Order snapshot " + path + " is too short, ignored");
+                return null;
+            }
+            CRC32C crc = new CRC32C();
+            DataInputStream in = new DataInputStream(new CheckedInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE), crc));
+            int magic = in.readInt();
+            if (magic != MAGIC && magic != MAGIC_V1) {
+                System.out.println("Order snapshot " + path + " is damaged, ignored");
+                return null;
+            }
+            boolean hasCollected = magic == MAGIC;
+            int segment = in.readInt();
+            long position = in.readLong();
+            int count = in.readInt();
+            long entriesEnd = HEADER_SIZE + (long) count * ENTRY_SIZE;
+            if (count < 0 || (hasCollected ? size < entriesEnd + 8 : size != entriesEnd + 4)) {
+                System.out.println("Order snapshot " + path + " has the wrong size, ignored");
+                return null;
+            }
+            OrderState[] states = OrderState.values();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long orderId = in.readLong();
+                int stateOrdinal = in.readByte();
+                if (stateOrdinal < 0 || stateOrdinal >= states.length) {
+                    System.out.println("Order snapshot " + path + " has an unknown order state, ignored");
+                    return null;
+                }
+                entries.add(new Entry(orderId, states[stateOrdinal], in.readInt(), in.readLong(),
+                        in.readLong(), in.readLong()));
+            }
+            List<CollectedEntry> collected = null;
+            if (hasCollected) {
+                int collectedCount = in.readInt();
+                if (collectedCount < 0 || size != entriesEnd + 4 + (long) collectedCount * COLLECTED_ENTRY_SIZE + 4) {
+                    System.out.println("Order snapshot " + path + " has the wrong size, ignored");
+                    return null;
+                }
+                collected = new ArrayList<>(collectedCount);
+                for (int i = 0; i < collectedCount; i++) {
+                    collected.add(new CollectedEntry(in.readLong(), in.readInt(), in.readLong()));
+                }
+            }
+            int expectedCrc = (int) crc.getValue();
+            if (in.readInt() != expectedCrc) {
+                System.out.println("Order snapshot " + path + " is damaged, ignored");
+                return null;
+            }
+            return new OrderStateSnapshot(segment, position, entries, collected);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.out.println("Failed to read order snapshot " + path + ", " + e.getMessage());
+            return null;
+        }
+    }
+}
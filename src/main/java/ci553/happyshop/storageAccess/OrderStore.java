@@ -0,0 +1,54 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+
+import java.io.IOException;
+import java.util.TreeMap;
+
+/**
+ * The OrderStore interface defines where OrderHub keeps its orders.
+ *
+ * Implementations:
+ * - OrderJournal:   (default) an append-only journal of order events, see OrderJournal.
+ * - FileOrderStore: the legacy layout, one text file per order, moved between the
+ *                   orders/ordered, orders/progressing and orders/collected folders.
+ *
+ * The implementation is chosen by OrderStoreFactory, so OrderHub does not depend on either of them.
+ */
+
+public interface OrderStore {
+
+    /**
+     * Stores a new order.
+     * @param orderId     the unique order ID
+     * @param orderDetail the order as formatted by Order.orderDetails()
+     */
+    void createOrder(long orderId, String orderDetail) throws IOException;
+
+    /**
+     * Records that an order moved to a new state, and the time it happened.
+     * @return false if the order is unknown
+     */
+    boolean updateOrderState(long orderId, OrderState newState) throws IOException;
+
+    /**
+     * Returns the details of an order, collected orders included, with its current state and timestamps.
+     * @throws IOException if the order is unknown or cannot be read
+     */
+    String readOrder(long orderId) throws IOException;
+
+    /**
+     * Loads the orders that are not collected yet (Ordered or Progressing), used at system startup.
+     * @return orderId to state, sorted by order ID
+     */
+    TreeMap<Long, OrderState> loadActiveOrders() throws IOException;
+
+    /**
+     * Forces everything written so far to disk, used by OrderPersistenceWriter once per batch.
+     * The legacy order files are not forced, so FileOrderStore does nothing here.
+     */
+    default void sync() throws IOException {}
+
+    //Releases any open files
+    default void close() throws IOException {}
+}
@@ -0,0 +1,103 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+
+/**
+ * OrderStoreFactory creates the OrderStore used by OrderHub, chosen with -Dhappyshop.orders.store:
+ *     journal  (default) the append-only OrderJournal in orders/journal
+ *     files    the legacy layout, one text file per order in orders/ordered, orders/progressing
+ *              and orders/collected (FileOrderStore)
+ *
+ * Journal settings: happyshop.orders.journal.segmentBytes (default 64 MB),
+ * happyshop.orders.journal.sync (default true, force every append to disk) and
+ * happyshop.orders.snapshot.interval (default 10000, appends between index snapshots, see OrderJournal).
+ *
+ * When the journal is created for the first time, the uncollected orders of the legacy folders are
+ * imported into it, so switching to the journal does not lose orders that are still being picked.
+ *
+ * When the order files are used (chosen, or because the journal cannot be opened), collected order files
+ * are rolled into the compressed OrderArchive in orders/archive by a background thread, which is stopped
+ * when the FileOrderStore is closed (disable with -Dhappyshop.orders.archive=false). Settings: happyshop.orders.archive.intervalSeconds
+ * (default 300) and happyshop.orders.archive.segmentBytes (default 16 MB).
+ *
+ * The store is wrapped in an OrderPersistenceWriter, so orders are written by a background thread
+ * (disable with -Dhappyshop.orders.writer=false). Writer settings:
+ *     happyshop.orders.durability        enqueue (default), write or fsync, see OrderPersistenceWriter
+ *     happyshop.orders.writer.queueSize  most writes waiting (default 1024)
+ *     happyshop.orders.writer.maxBatch   most writes per batch (default 64)
+ * With the writer the journal is not forced on every append; each batch is forced once instead,
+ * if happyshop.orders.journal.sync is true or the durability is fsync.
+ */
+
+public class OrderStoreFactory {
+    private static final String storeType = System.getProperty("happyshop.orders.store", "journal");
+    private static final long journalSegmentBytes =
+            Long.getLong("happyshop.orders.journal.segmentBytes", 64L * 1024 * 1024);
+    private static final boolean journalSync =
+            Boolean.parseBoolean(System.getProperty("happyshop.orders.journal.sync", "true"));
+    private static final int snapshotInterval = Integer.getInteger("happyshop.orders.snapshot.interval", 10000);
+    private static final boolean archiveEnabled =
+            Boolean.parseBoolean(System.getProperty("happyshop.orders.archive", "true"));
+    private static final long archiveIntervalSeconds = Long.getLong("happyshop.orders.archive.intervalSeconds", 300);
+    private static final long archiveSegmentBytes =
+            Long.getLong("happyshop.orders.archive.segmentBytes", 16L * 1024 * 1024);
+    private static final boolean writerEnabled =
+            Boolean.parseBoolean(System.getProperty("happyshop.orders.writer", "true"));
+    private static final OrderPersistenceWriter.Durability durability =
+            OrderPersistenceWriter.Durability.parse(System.getProperty("happyshop.orders.durability", "enqueue"));
+    private static final int writerQueueSize = Integer.getInteger("happyshop.orders.writer.queueSize", 1024);
+    private static final int writerMaxBatch = Integer.getInteger("happyshop.orders.writer.maxBatch", 64);
+
+    public static OrderStore createOrderStore() {
+        if (!writerEnabled) {
+            return createBackingStore(journalSync);
+        }
+        System.out.println("Orders are written in the background, durability: " + durability);
+        return new OrderPersistenceWriter(createBackingStore(false), durability, writerQueueSize,
+                writerMaxBatch, journalSync);
+    }
+
+    // The journal or the order files, without the background writer
+    private static OrderStore createBackingStore(boolean syncOnAppend) {
+        if (storeType.equals("files")) {
+            System.out.println("Using the legacy file-per-order store");
+            return createFileOrderStore();
+        }
+        try {
+            OrderJournal journal = OrderJournal.open(StorageLocation.journalPath, journalSegmentBytes, syncOnAppend,
+                    snapshotInterval);
+            if (journal.isEmpty()) { // first start: the legacy order files have not been imported yet
+                journal.importLegacyOrders(StorageLocation.orderedPath, StorageLocation.progressingPath);
+            }
+            return journal;
+        } catch (IOException e) {
+            // orders can still be taken, they are just written the old way
+            System.err.println("⚠️ Failed to open the order journal, using order files instead: " + e.getMessage());
+            return createFileOrderStore();
+        }
+    }
+
+    // The order files, with the archive they own (closed with the store)
+    private static FileOrderStore createFileOrderStore() {
+        return new FileOrderStore(StorageLocation.orderedPath, StorageLocation.progressingPath,
+                StorageLocation.collectedPath, StorageLocation.orderSnapshotPath, openArchive());
+    }
+
+    // Opens the archive of collected orders and starts archiving orders/collected in the background.
+    private static OrderArchive openArchive() {
+        if (!archiveEnabled) {
+            return null;
+        }
+        try {
+            OrderArchive archive = OrderArchive.open(StorageLocation.archivePath, archiveSegmentBytes);
+            archive.startArchiving(StorageLocation.collectedPath, archiveIntervalSeconds);
+            return archive;
+        } catch (IOException e) {
+            // collected order files simply stay in orders/collected
+            System.out.println("Failed to open the order archive, collected orders are not archived: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ci553.happyshop.storageAccess;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A connection borrowed from the ConnectionPool.
+ *
+ * Closing a PooledConnection does not close the underlying JDBC connection,
+ * it hands it back to the pool so the next caller can reuse it:
+ * <pre>
+ *     try (PooledConnection pc = pool.borrow()) {
+ *         Connection conn = pc.getConnection();
+ *         ...
+ *     } // returned to the pool here
+ * </pre>
+ * Callers must not close the Connection returned by getConnection() themselves.
+ *
+ * Statements obtained through prepareStatement() are cached on this connection (see StatementCache)
+ * and must not be closed by the caller either.
+ */
+
+public class PooledConnection implements AutoCloseable {
+    private final Connection connection;
+    private final ConnectionPool pool;
+    private final StatementCache statementCache;
+    private volatile long lastUsedMillis = System.currentTimeMillis();
+    private final AtomicBoolean borrowed = new AtomicBoolean(false);
+
+    PooledConnection(Connection connection, ConnectionPool pool, StatementCache statementCache) {
+        this.connection = connection;
+        this.pool = pool;
+        this.statementCache = statementCache;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns a prepared statement for the sql, re-using the one prepared earlier on this connection if any.
+     * The statement stays open for the next borrower, so do not close it; close its ResultSets instead.
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return statementCache.prepare(sql);
+    }
+
+    // Same as above, for statements that need Statement.RETURN_GENERATED_KEYS
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return statementCache.prepare(sql, autoGeneratedKeys);
+    }
+
+    StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    long getLastUsedMillis() {
+        return lastUsedMillis;
+    }
+
+    void touch() {
+        lastUsedMillis = System.currentTimeMillis();
+    }
+
+    void markBorrowed() {
+        borrowed.set(true);
+    }
+
+    //Returns the connection to the pool, closing twice has no further effect
+    @Override
+    public void close() {
+        if (borrowed.compareAndSet(true, false)) {
+            pool.release(this);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, time-limited in-memory cache of products keyed by product ID, used by CachingDatabaseRW.
+ *
+ * - At most maxSize products are kept; the least recently used one is dropped when the cache is full.
+ * - An entry older than ttlMillis is treated as missing and reloaded from the database.
+ * - "Product not found" results are cached too, so repeated searches for a wrong ID don't hit the database.
+ *
+ * Products are copied on the way in and out, because Product objects are mutable
+ * (eg CustomerModel changes the ordered quantity of products in the trolley).
+ */
+
+public class ProductCache {
+    private final int maxSize;
+    private final long ttlMillis;
+
+    private final LinkedHashMap<String, Entry> entries; // guarded by this
+    private final AtomicLong generation = new AtomicLong(); // bumped on every invalidation
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    // product is null when the database had no such product
+    private record Entry(Product product, long expiresAtMillis) {}
+
+    public ProductCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) { // access order = LRU
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > ProductCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks up a product.
+     * @return null if the product is not cached (or has expired),
+     *         otherwise a Lookup holding a copy of the product (which itself may be null for "not found")
+     */
+    public synchronized Lookup get(String productId) {
+        Entry entry = entries.get(productId);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expiresAtMillis() < System.currentTimeMillis()) {
+            entries.remove(productId);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new Lookup(copyOf(entry.product()));
+    }
+
+    /**
+     * Returns the current generation, pass it to put() after loading from the database.
+     */
+    public long currentGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Stores a product loaded from the database.
+     * If anything was invalidated since loadGeneration was read, the loaded value may already be stale,
+     * so it is not stored.
+     */
+    public synchronized void put(String productId, Product product, long loadGeneration) {
+        if (generation.get() != loadGeneration) return;
+        entries.put(productId, new Entry(copyOf(product), System.currentTimeMillis() + ttlMillis));
+    }
+
+    public void invalidate(String productId) {
+        invalidateAll(List.of(productId));
+    }
+
+    public synchronized void invalidateAll(Collection<String> productIds) {
+        generation.incrementAndGet();
+        for (String productId : productIds) {
+            if (entries.remove(productId) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation.incrementAndGet();
+        invalidations.add(entries.size());
+        entries.clear();
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(entries.size(), maxSize, hits.sum(), misses.sum(),
+                evictions.sum(), expirations.sum(), invalidations.sum());
+    }
+
+    private static Product copyOf(Product p) {
+        if (p == null) return null;
+        return new Product(p.getProductId(), p.getProductDescription(), p.getProductImageName(),
+                p.getUnitPrice(), p.getStockQuantity());
+    }
+
+    /**
+     * The result of a cache hit. product is null when the cached answer is "no such product".
+     */
+    public record Lookup(Product product) {}
+
+    /**
+     * A snapshot of the cache metrics.
+     */
+    public record CacheStats(int size, int maxSize, long hits, long misses,
+                             long evictions, long expirations, long invalidations) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ProductCache[size=%d/%d, hits=%d, misses=%d, hitRate=%.1f%%, " +
+                            "evictions=%d, expirations=%d, invalidations=%d]",
+                    size, maxSize, hits, misses, hitRate() * 100, evictions, expirations, invalidations);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ci553.happyshop.storageAccess;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ProductLockManager provides process-wide, per-product locking for stock mutations.
+ *
+ * Instead of one lock for every product, product IDs are hashed onto a fixed number of lock stripes.
+ * Two operations only wait for each other if their products share a stripe, so a warehouse edit of
+ * product 0005 no longer blocks a customer buying 0001.
+ *
+ * The manager is a singleton so that every DatabaseRW instance in the JVM (Main starts several clients
+ * in one process) shares the same stripes.
+ *
+ * Operations on several products must use lockAll(), which takes the stripes in ascending stripe order;
+ * because every caller uses the same order, two multi-product operations can never deadlock.
+ *
+ * Usage:
+ * <pre>
+ *     try (ProductLockManager.LockHandle ignored = productLocks.lock(productId)) {
+ *         ... mutate the product ...
+ *     }
+ * </pre>
+ *
+ * Per-stripe contention metrics are available from getStripeStats().
+ */
+
+public class ProductLockManager {
+    private static final ProductLockManager productLockManager =
+            new ProductLockManager(Integer.getInteger("happyshop.productLock.stripes", 64));
+
+    private final Stripe[] stripes;
+
+    //Singleton pattern
+    private ProductLockManager(int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("stripeCount must be positive: " + stripeCount);
+        }
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    public static ProductLockManager getInstance() {
+        return productLockManager;
+    }
+
+    //Locks the stripe of a single product
+    public LockHandle lock(String productId) {
+        int index = stripeIndex(productId);
+        stripes[index].acquire();
+        return new LockHandle(new int[]{index});
+    }
+
+    //Locks the stripes of all given products, always in ascending stripe order to avoid deadlock
+    public LockHandle lockAll(Collection<String> productIds) {
+        TreeSet<Integer> indexes = new TreeSet<>(); // sorted and without duplicates
+        for (String productId : productIds) {
+            indexes.add(stripeIndex(productId));
+        }
+
+        int[] acquired = new int[indexes.size()];
+        int count = 0;
+        try {
+            for (int index : indexes) {
+                stripes[index].acquire();
+                acquired[count++] = index;
+            }
+        } catch (RuntimeException | Error e) {
+            for (int i = count - 1; i >= 0; i--) {
+                stripes[acquired[i]].lock.unlock(); // undo a partial acquisition
+            }
+            throw e;
+        }
+        return new LockHandle(acquired);
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Returns a snapshot of the contention metrics of every stripe that has been used at least once.
+     */
+    public List<StripeStats> getStripeStats() {
+        List<StripeStats> stats = new ArrayList<>();
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe s = stripes[i];
+            long acquisitions = s.acquisitions.sum();
+            if (acquisitions > 0) {
+                stats.add(new StripeStats(i, acquisitions, s.contended.sum(),
+                        s.waitNanos.sum() / 1_000_000.0, s.lock.getQueueLength()));
+            }
+        }
+        return stats;
+    }
+
+    private int stripeIndex(String productId) {
+        int h = productId.trim().hashCode(); // productID is CHAR(4), ignore padding
+        h ^= (h >>> 16); // spread the high bits, product IDs differ mostly in the last characters
+        return Math.floorMod(h, stripes.length);
+    }
+
+    private static class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final LongAdder acquisitions = new LongAdder();
+        final LongAdder contended = new LongAdder(); // acquisitions that had to wait
+        final LongAdder waitNanos = new LongAdder();
+
+        void acquire() {
+            if (!lock.tryLock()) {
+                long start = System.nanoTime();
+                lock.lock();
+                contended.increment();
+                waitNanos.add(System.nanoTime() - start);
+            }
+            acquisitions.increment();
+        }
+    }
+
+    /**
+     * Releases the stripes taken by lock() or lockAll() when closed (in reverse order).
+     */
+    public class LockHandle implements AutoCloseable {
+        private final int[] stripeIndexes;
+        private boolean released = false;
+
+        private LockHandle(int[] stripeIndexes) {
+            this.stripeIndexes = stripeIndexes;
+        }
+
+        @Override
+        public void close() {
+            if (released) return;
+            released = true;
+            for (int i = stripeIndexes.length - 1; i >= 0; i--) {
+                stripes[stripeIndexes[i]].lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Contention metrics of one stripe.
+     *
+     * @param stripe        the stripe index
+     * @param acquisitions  how many times the stripe was locked
+     * @param contended     how many of those acquisitions had to wait for another thread
+     * @param totalWaitMillis total time spent waiting for the stripe
+     * @param queueLength   threads waiting for the stripe right now (an estimate)
+     */
+    public record StripeStats(int stripe, long acquisitions, long contended, double totalWaitMillis, int queueLength) {
+        public double contentionRate() {
+            return acquisitions == 0 ? 0 : (double) contended / acquisitions;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.ArrayList;
+
+/**
+ * One page of a paged product search, returned by DatabaseRW.searchProductPage().
+ *
+ * @param products    the products on this page, in the requested sort order
+ * @param offset      position of the first product of this page within all matches
+ * @param totalCount  number of products matching the keyword across all pages
+ */
+
+public record ProductPage(ArrayList<Product> products, int offset, int totalCount) {
+
+    //offset to ask for to get the page after this one
+    public int nextOffset() {
+        return offset + products.size();
+    }
+
+    public boolean hasMore() {
+        return nextOffset() < totalCount;
+    }
+
+    public static ProductPage empty() {
+        return new ProductPage(new ArrayList<>(), 0, 0);
+    }
+}
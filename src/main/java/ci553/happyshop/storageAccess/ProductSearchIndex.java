@@ -0,0 +1,211 @@
+package ci553.happyshop.storageAccess;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory inverted index over ProductTable.description, used to search products by name
+ * without a full table scan (LOWER(description) LIKE '%kw%' cannot use a database index).
+ *
+ * Two kinds of postings are kept, both mapping to the IDs of the products that contain them:
+ * - trigrams: every 3-character substring of the lower-cased description, eg "usb drive" gives
+ *   "usb", "sb ", "b d", " dr", ... A keyword of 3 or more characters can only appear in products that
+ *   have all of its trigrams, so intersecting those postings gives a small candidate set.
+ * - words: every alphanumeric word of the description. Keywords shorter than 3 characters have no
+ *   trigram, so they are matched against the (much smaller) word dictionary instead.
+ *
+ * Candidates are always checked with description.contains(keyword), so the result is exactly what the
+ * old LIKE '%kw%' query returned.
+ *
+ * The index is built once from the database (see build()) and kept up to date by DerbyRW whenever a
+ * product is inserted, updated or deleted. It is owned by DatabaseRWFactory and shared by all DerbyRW instances.
+ */
+
+public class ProductSearchIndex {
+    private static final int GRAM = 3;
+
+    private final Map<String, String> descriptions = new HashMap<>();     // productId -> lower-cased description
+    private final Map<String, Set<String>> trigramPostings = new HashMap<>(); // trigram -> productIds
+    private final Map<String, Set<String>> wordPostings = new HashMap<>();    // word -> productIds
+    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+
+    /**
+     * Builds the index from every product in ProductTable.
+     */
+    public static ProductSearchIndex build(ConnectionPool connectionPool) throws SQLException {
+        ProductSearchIndex index = new ProductSearchIndex();
+        long start = System.currentTimeMillis();
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement stmt = pc.prepareStatement("SELECT productID, description FROM ProductTable");
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    index.put(rs.getString("productID"), rs.getString("description"));
+                }
+            }
+        }
+        System.out.println("Product search index built: " + index.size() + " products in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return index;
+    }
+
+    /**
+     * Returns the IDs (sorted) of all products whose description contains the keyword, ignoring case.
+     */
+    public List<String> search(String keyword) {
+        return search(keyword, ProductSortKey.PRODUCT_ID);
+    }
+
+    /**
+     * Returns the IDs of all products whose description contains the keyword, ignoring case,
+     * sorted by product ID or by description (then ID). Other sort keys need columns the index
+     * does not hold, so they get product ID order.
+     */
+    public List<String> search(String keyword, ProductSortKey sortKey) {
+        String kw = keyword.toLowerCase();
+        rwLock.readLock().lock();
+        try {
+            Set<String> candidates;
+            if (kw.isEmpty()) {
+                candidates = descriptions.keySet();
+            } else if (kw.length() >= GRAM) {
+                candidates = candidatesFromTrigrams(kw);
+            } else if (isWord(kw)) {
+                candidates = candidatesFromWords(kw);
+            } else {
+                candidates = descriptions.keySet(); // eg "3 ", too short and spans a word boundary
+            }
+
+            TreeSet<String> matches = new TreeSet<>();
+            for (String productId : candidates) {
+                if (descriptions.get(productId).contains(kw)) { // confirm, postings only narrow it down
+                    matches.add(productId);
+                }
+            }
+            List<String> result = new ArrayList<>(matches);
+            if (sortKey == ProductSortKey.DESCRIPTION) {
+                result.sort(Comparator.comparing(descriptions::get)); // stable, so equal descriptions stay in ID order
+            }
+            return result;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    //Adds a new product, or replaces the description of an existing one
+    public void put(String productId, String description) {
+        String des = description == null ? "" : description.toLowerCase();
+        rwLock.writeLock().lock();
+        try {
+            String old = descriptions.put(productId, des);
+            if (old != null) {
+                removePostings(productId, old);
+            }
+            for (String gram : trigramsOf(des)) {
+                trigramPostings.computeIfAbsent(gram, k -> new HashSet<>()).add(productId);
+            }
+            for (String word : wordsOf(des)) {
+                wordPostings.computeIfAbsent(word, k -> new HashSet<>()).add(productId);
+            }
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String productId) {
+        rwLock.writeLock().lock();
+        try {
+            String old = descriptions.remove(productId);
+            if (old != null) {
+                removePostings(productId, old);
+            }
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        rwLock.readLock().lock();
+        try {
+            return descriptions.size();
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    // Intersects the postings of every trigram in the keyword, smallest posting list first
+    private Set<String> candidatesFromTrigrams(String kw) {
+        List<Set<String>> postings = new ArrayList<>();
+        for (String gram : trigramsOf(kw)) {
+            Set<String> ids = trigramPostings.get(gram);
+            if (ids == null) return Collections.emptySet(); // no product has this trigram
+            postings.add(ids);
+        }
+        postings.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        Set<String> result = new HashSet<>(postings.get(0));
+        for (int i = 1; i < postings.size() && !result.isEmpty(); i++) {
+            result.retainAll(postings.get(i));
+        }
+        return result;
+    }
+
+    // Unions the postings of every dictionary word that contains the (short) keyword
+    private Set<String> candidatesFromWords(String kw) {
+        Set<String> result = new HashSet<>();
+        for (Map.Entry<String, Set<String>> entry : wordPostings.entrySet()) {
+            if (entry.getKey().contains(kw)) {
+                result.addAll(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private void removePostings(String productId, String des) {
+        for (String gram : trigramsOf(des)) {
+            removePosting(trigramPostings, gram, productId);
+        }
+        for (String word : wordsOf(des)) {
+            removePosting(wordPostings, word, productId);
+        }
+    }
+
+    private static void removePosting(Map<String, Set<String>> postings, String key, String productId) {
+        Set<String> ids = postings.get(key);
+        if (ids != null) {
+            ids.remove(productId);
+            if (ids.isEmpty()) postings.remove(key); // keep the dictionary small
+        }
+    }
+
+    private static Set<String> trigramsOf(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private static Set<String> wordsOf(String text) {
+        Set<String> words = new HashSet<>();
+        for (String word : text.split("(?U)[^\\p{Alnum}]+")) {
+            if (!word.isEmpty()) words.add(word);
+        }
+        return words;
+    }
+
+    private static boolean isWord(String kw) {
+        return kw.chars().allMatch(Character::isLetterOrDigit);
+    }
+}
@@ -0,0 +1,25 @@
+package ci553.happyshop.storageAccess;
+
+/**
+ * The orders in which a paged product search can return its results.
+ *
+ * - PRODUCT_ID and DESCRIPTION (both ascending) are sorted in memory from the product search index.
+ * - UNIT_PRICE and STOCK (both ascending, ties broken by product ID) are sorted by the database.
+ */
+
+public enum ProductSortKey {
+    PRODUCT_ID("productID"),
+    DESCRIPTION("description"),
+    UNIT_PRICE("unitPrice"),
+    STOCK("inStock");
+
+    private final String column; // ProductTable column used in ORDER BY
+
+    ProductSortKey(String column) {
+        this.column = column;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+}
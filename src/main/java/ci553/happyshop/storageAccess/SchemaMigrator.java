@@ -0,0 +1,160 @@
+package ci553.happyshop.storageAccess;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * SchemaMigrator evolves the schema of an existing database without wiping its data.
+ *
+ * Responsibilities:
+ * - Recording which schema versions have been applied, in SchemaVersionTable.
+ * - Running, in version order, every migration newer than the recorded version (forward only, never undone).
+ * - Applying each migration in its own transaction together with its version row, so a failed migration
+ *   leaves the database at the previous version and is retried on the next start.
+ *
+ * DatabaseRWFactory runs the migrations once when the connection pool is created (disable with
+ * -Dhappyshop.db.migrate=false), and SetDatabase runs them after recreating the tables.
+ *
+ * To change the schema, append a new Migration with the next version number; never edit a released one.
+ */
+
+public class SchemaMigrator {
+    private static final String VERSION_TABLE = "SchemaVersionTable";
+
+    /**
+     * One schema change.
+     * @param version     its position in the migration order, starting at 1
+     * @param description what it does, recorded with the version
+     * @param statements  the DDL/DML to run, in order
+     */
+    public record Migration(int version, String description, String... statements) {}
+
+    private static final List<Migration> migrations = List.of(
+            // TransactionDAO.getTransactionHistory looks up by orderID and orders by transactionDateTime
+            new Migration(1, "Index TransactionTable by orderID and transactionDateTime",
+                    "CREATE INDEX idx_transaction_order_time ON TransactionTable(orderID, transactionDateTime)"),
+
+            // Name searches match a lower-cased description. The generated column is lower-cased once when a row
+            // is written instead of for every row on every search. Searches for a keyword anywhere in the name
+            // (LIKE '%kw%', as DerbyRW runs them) still scan, as a leading wildcard cannot use an index;
+            // the index only serves prefix matches (LIKE 'kw%'). DerbyRW uses LOWER(description) without it.
+            new Migration(2, "Add indexed lower-cased ProductTable description",
+                    "ALTER TABLE ProductTable ADD COLUMN descriptionLower VARCHAR(100) " +
+                            "GENERATED ALWAYS AS (LOWER(description))",
+                    "CREATE INDEX idx_product_description_lower ON ProductTable(descriptionLower)"),
+
+            // UserDAO.findByUsername runs on every login. Where username is already UNIQUE,
+            // Derby reuses the constraint's index and only reports a warning.
+            new Migration(3, "Index UserTable by username",
+                    "CREATE INDEX idx_user_username ON UserTable(username)"),
+
+            // Order IDs are 64-bit (OrderCounter). Derby cannot change a column's type in place,
+            // so the values are copied to a new BIGINT column that then takes the old one's name.
+            new Migration(4, "Widen TransactionTable.orderID to BIGINT",
+                    "DROP INDEX idx_transaction_order_time",
+                    "ALTER TABLE TransactionTable ADD COLUMN orderIDWide BIGINT NOT NULL DEFAULT 0",
+                    "UPDATE TransactionTable SET orderIDWide = orderID",
+                    "ALTER TABLE TransactionTable DROP COLUMN orderID",
+                    "RENAME COLUMN TransactionTable.orderIDWide TO orderID",
+                    "ALTER TABLE TransactionTable ALTER COLUMN orderID DROP DEFAULT",
+                    "CREATE INDEX idx_transaction_order_time ON TransactionTable(orderID, transactionDateTime)")
+    );
+
+    /**
+     * Brings the database behind the pool up to the latest schema version.
+     * @return the schema version after migrating
+     */
+    public static int migrate(ConnectionPool connectionPool) throws SQLException {
+        try (PooledConnection pc = connectionPool.borrow()) {
+            return migrate(pc.getConnection(), pc); // the pool restores auto-commit when the connection is returned
+        }
+    }
+
+    /**
+     * Brings the database behind the connection up to the latest schema version.
+     * @return the schema version after migrating
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        return migrate(connection, null);
+    }
+
+    // pc is the pooled connection behind the connection, or null for a plain connection
+    private static int migrate(Connection connection, PooledConnection pc) throws SQLException {
+        createVersionTableIfMissing(connection);
+        int currentVersion = currentVersion(connection);
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            for (Migration migration : migrations) {
+                if (migration.version() <= currentVersion) continue; // already applied
+
+                try (Statement statement = connection.createStatement()) {
+                    for (String sql : migration.statements()) {
+                        statement.executeUpdate(sql);
+                    }
+                    recordVersion(connection, pc, migration);
+                    connection.commit();
+                    currentVersion = migration.version();
+                    System.out.println("Schema migrated to version " + currentVersion + ": " + migration.description());
+                } catch (SQLException e) {
+                    connection.rollback();
+                    System.out.println("Schema migration " + migration.version() + " failed, staying at version "
+                            + currentVersion + ": " + e.getMessage());
+                    throw e;
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return currentVersion;
+    }
+
+    //the newest version the code knows about
+    public static int latestVersion() {
+        return migrations.get(migrations.size() - 1).version();
+    }
+
+    private static void createVersionTableIfMissing(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE " + VERSION_TABLE + "(" +
+                    "version INTEGER PRIMARY KEY," +
+                    "description VARCHAR(200) NOT NULL," +
+                    "appliedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                    ")");
+            System.out.println("Created " + VERSION_TABLE);
+        } catch (SQLException e) {
+            if (!"X0Y32".equals(e.getSQLState())) { // X0Y32 = Table already exists
+                throw e;
+            }
+        }
+    }
+
+    private static int currentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MAX(version) FROM " + VERSION_TABLE)) {
+            return rs.next() ? rs.getInt(1) : 0; // MAX of no rows is NULL, read as 0
+        }
+    }
+
+    private static void recordVersion(Connection connection, PooledConnection pc, Migration migration) throws SQLException {
+        String sql = "INSERT INTO " + VERSION_TABLE + " (version, description) VALUES (?, ?)";
+        if (pc != null) {
+            insertVersion(pc.prepareStatement(sql), migration); // cached on the connection, not closed here
+        } else {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                insertVersion(pstmt, migration);
+            }
+        }
+    }
+
+    private static void insertVersion(PreparedStatement pstmt, Migration migration) throws SQLException {
+        pstmt.setInt(1, migration.version());
+        pstmt.setString(2, migration.description());
+        pstmt.executeUpdate();
+    }
+}
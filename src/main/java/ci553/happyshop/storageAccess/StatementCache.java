@@ -0,0 +1,89 @@
+package ci553.happyshop.storageAccess;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A least-recently-used cache of PreparedStatements for one pooled connection, keyed by SQL text.
+ *
+ * The storage layer runs the same handful of SQL strings over and over
+ * (eg "SELECT * FROM ProductTable WHERE productID = ?"), so each pooled connection keeps
+ * the statements it has already prepared and hands them out again instead of re-preparing.
+ *
+ * Statements returned by the cache are owned by it: callers must not close them, but should
+ * close any ResultSet they open. When the cache is full the least recently used statement is closed.
+ *
+ * Statements are wrapped by StorageMetrics so that slow executions end up in the slow-query log.
+ *
+ * A cache is only ever used by the thread that has borrowed its connection, so it needs no locking.
+ */
+
+class StatementCache {
+    private final Connection connection;
+    private final LinkedHashMap<StatementKey, PreparedStatement> statements;
+    private final LongAdder hits;   // shared with the pool, so the pool can report totals
+    private final LongAdder misses;
+
+    // sql text plus the generated-keys flag, the same SQL prepared both ways gives two different statements
+    private record StatementKey(String sql, int autoGeneratedKeys) {}
+
+    StatementCache(Connection connection, int capacity, LongAdder hits, LongAdder misses) {
+        this.connection = connection;
+        this.hits = hits;
+        this.misses = misses;
+        // accessOrder=true makes iteration order least-recently-used first
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StatementKey, PreparedStatement> eldest) {
+                if (size() > capacity) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        StatementKey key = new StatementKey(sql, autoGeneratedKeys);
+        PreparedStatement pstmt = statements.get(key);
+        if (pstmt != null && !pstmt.isClosed()) {
+            hits.increment();
+            pstmt.clearParameters(); // don't leak bind values from the previous caller
+            return pstmt;
+        }
+        misses.increment();
+        pstmt = StorageMetrics.getInstance().wrapStatement(connection.prepareStatement(sql, autoGeneratedKeys), sql);
+        statements.put(key, pstmt);
+        return pstmt;
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    //Closes every cached statement, used when the connection itself is closed
+    void clear() {
+        for (PreparedStatement pstmt : statements.values()) {
+            closeQuietly(pstmt);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement pstmt) {
+        try {
+            pstmt.close();
+        } catch (SQLException e) {
+            System.out.println("Failed to close cached statement: " + e.getMessage());
+        }
+    }
+}
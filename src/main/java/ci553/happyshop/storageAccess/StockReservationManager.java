@@ -0,0 +1,267 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StockReservationManager holds stock for a customer while they pay, so a customer is never charged
+ * for products that another customer bought while the payment window was open.
+ *
+ * Lifecycle of a reservation:
+ * - reserve():  at checkout start, every trolley line is checked against the stock available to sell
+ *               (stock minus the holds of other customers) and, only if all lines fit, held in one step.
+ * - purchase(): on payment success, the reserved lines are bought with purchaseStocks(), then the holds are dropped.
+ *               An expired reservation is only bought if the stock available to sell still covers it.
+ * - release(): on payment cancel, the holds are dropped.
+ * - A hold that is neither purchased nor released expires after ttlMillis
+ *   (happyshop.reservation.ttlMillis, default 5 minutes) and is removed by a single background sweeper.
+ *
+ * Holds are kept in memory and shared by every client in the JVM (singleton, like ProductLockManager).
+ * Every change to the holds of a product is made while holding that product's lock stripe, so a check
+ * of the available stock and the hold that follows it cannot interleave with another customer's.
+ */
+
+public class StockReservationManager {
+    private static final StockReservationManager stockReservationManager = new StockReservationManager(
+            Long.getLong("happyshop.reservation.ttlMillis", 300_000),
+            Long.getLong("happyshop.reservation.sweepMillis", 1_000));
+
+    private final long ttlMillis;
+    private final ProductLockManager productLocks = ProductLockManager.getInstance();
+    private final ConcurrentHashMap<Long, Reservation> reservations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> heldByProduct = new ConcurrentHashMap<>(); // productId -> held units
+    private final Set<Long> purchasing = ConcurrentHashMap.newKeySet(); // reservations whose purchase is running
+    private final AtomicLong nextReservationId = new AtomicLong(1);
+    private final ScheduledExecutorService sweeper;
+
+    // statistics
+    private final LongAdder reservedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder purchasedCount = new LongAdder();
+    private final LongAdder releasedCount = new LongAdder();
+    private final LongAdder expiredCount = new LongAdder();
+
+    //Singleton pattern
+    private StockReservationManager(long ttlMillis, long sweepMillis) {
+        this.ttlMillis = ttlMillis;
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stock-reservation-sweeper");
+            t.setDaemon(true); // must not keep the JVM alive
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::releaseExpired, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static StockReservationManager getInstance() {
+        return stockReservationManager;
+    }
+
+    /**
+     * Holds the ordered quantity of every line, all or nothing.
+     *
+     * @param databaseRW where the current stock is read from
+     * @param proList    the trolley lines, grouped by product ID
+     * @return a result holding either the reservation, or the lines that cannot be reserved
+     *         (as copies whose stock quantity is the quantity still available to sell)
+     */
+    public ReservationResult reserve(DatabaseRW databaseRW, ArrayList<Product> proList) throws SQLException {
+        ArrayList<Product> sortedList = new ArrayList<>(proList);
+        Collections.sort(sortedList);
+        List<String> productIds = productIdsOf(sortedList);
+
+        try (ProductLockManager.LockHandle productLock = productLocks.lockAll(productIds)) {
+            ArrayList<Product> insufficientProducts = insufficientLines(databaseRW, sortedList, productIds);
+            if (!insufficientProducts.isEmpty()) {
+                rejectedCount.increment();
+                System.out.println("Reservation rejected, not enough stock for " + insufficientProducts.size() + " products");
+                return new ReservationResult(null, insufficientProducts);
+            }
+
+            Reservation reservation = new Reservation(nextReservationId.getAndIncrement(), sortedList,
+                    System.currentTimeMillis() + ttlMillis);
+            addHolds(reservation);
+            reservedCount.increment();
+            System.out.println("Reservation " + reservation.id() + " holds " + sortedList.size() + " products");
+            return new ReservationResult(reservation, insufficientProducts);
+        }
+    }
+
+    /**
+     * Buys the reserved stock. purchaseStocks() runs without the product stripes: the holds keep the stock
+     * for this customer until it is bought, so no other customer can reserve it in between, and with group
+     * commit enabled tills buying the same products can share a batch instead of queueing on the stripes.
+     * The holds are dropped once the purchase has finished (or failed); until then the bought units count
+     * both as sold and as held, so other customers briefly see less stock available, never more.
+     * While the purchase runs the sweeper leaves the reservation alone, even if it expires meanwhile.
+     * A reservation that had already expired is held again first, out of the stock available to sell
+     * (stock minus the holds of other customers); if that stock no longer covers every line nothing is bought.
+     *
+     * @return the lines with insufficient stock, empty if the purchase succeeded
+     *         (for an expired reservation, copies whose stock quantity is the quantity still available to sell)
+     */
+    public ArrayList<Product> purchase(DatabaseRW databaseRW, Reservation reservation) throws SQLException {
+        List<String> productIds = productIdsOf(reservation.lines());
+        try (ProductLockManager.LockHandle productLock = productLocks.lockAll(productIds)) {
+            if (!reservations.containsKey(reservation.id())) {
+                ArrayList<Product> insufficientProducts = insufficientLines(databaseRW, reservation.lines(), productIds);
+                if (!insufficientProducts.isEmpty()) {
+                    rejectedCount.increment();
+                    System.out.println("Reservation " + reservation.id()
+                            + " had expired and its stock is now held by other customers, nothing bought");
+                    return insufficientProducts;
+                }
+                addHolds(reservation);
+                System.out.println("Reservation " + reservation.id() + " had expired, held again for the purchase");
+            }
+            purchasing.add(reservation.id());
+        }
+
+        try {
+            return databaseRW.purchaseStocks(reservation.lines());
+        } finally {
+            try (ProductLockManager.LockHandle productLock = productLocks.lockAll(productIds)) {
+                purchasing.remove(reservation.id());
+                if (removeHolds(reservation)) {
+                    purchasedCount.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the holds of a reservation, eg when the customer cancels the payment.
+     */
+    public void release(Reservation reservation) {
+        try (ProductLockManager.LockHandle productLock = productLocks.lockAll(productIdsOf(reservation.lines()))) {
+            if (removeHolds(reservation)) {
+                releasedCount.increment();
+                System.out.println("Reservation " + reservation.id() + " released");
+            }
+        }
+    }
+
+    /**
+     * Returns the stock of a product less the units currently held by reservations.
+     */
+    public int availableToSell(String productId, int inStock) {
+        return inStock - heldByProduct.getOrDefault(productId, 0);
+    }
+
+    public int getHeldQuantity(String productId) {
+        return heldByProduct.getOrDefault(productId, 0);
+    }
+
+    public ReservationStats getStats() {
+        return new ReservationStats(reservations.size(), reservedCount.sum(), rejectedCount.sum(),
+                purchasedCount.sum(), releasedCount.sum(), expiredCount.sum());
+    }
+
+    // run by the sweeper thread
+    private void releaseExpired() {
+        long now = System.currentTimeMillis();
+        for (Reservation reservation : reservations.values()) {
+            if (reservation.expiresAtMillis() > now) continue;
+            try (ProductLockManager.LockHandle productLock = productLocks.lockAll(productIdsOf(reservation.lines()))) {
+                if (purchasing.contains(reservation.id())) continue; // being bought, purchase() drops the holds
+                if (removeHolds(reservation)) {
+                    expiredCount.increment();
+                    System.out.println("Reservation " + reservation.id() + " expired");
+                }
+            } catch (RuntimeException e) {
+                System.out.println("Failed to expire reservation " + reservation.id() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks every line against the stock available to sell, products on several lines by their total.
+     * Must hold the stripes of the lines' products.
+     * @return copies of the lines that do not fit, whose stock quantity is the quantity still available to sell
+     */
+    private ArrayList<Product> insufficientLines(DatabaseRW databaseRW, List<Product> sortedList,
+                                                 List<String> productIds) throws SQLException {
+        ArrayList<Product> insufficientProducts = new ArrayList<>();
+        Map<String, Product> storedProducts = databaseRW.searchByProductIds(productIds); // one lookup for the trolley
+        Map<String, Integer> wanted = new HashMap<>(); // units asked for so far, for products on several lines
+        for (Product line : sortedList) {
+            String id = line.getProductId();
+            Product stored = storedProducts.get(id);
+            int available = stored == null ? 0 : availableToSell(id, stored.getStockQuantity());
+            int total = wanted.merge(id, line.getOrderedQuantity(), Integer::sum);
+            if (total > available) {
+                Product insufficient = new Product(id, line.getProductDescription(), line.getProductImageName(),
+                        line.getUnitPrice(), Math.max(available, 0));
+                insufficient.setOrderedQuantity(line.getOrderedQuantity());
+                insufficientProducts.add(insufficient);
+            }
+        }
+        return insufficientProducts;
+    }
+
+    // Must hold the stripes of the reservation's products
+    private void addHolds(Reservation reservation) {
+        for (Product line : reservation.lines()) {
+            heldByProduct.merge(line.getProductId(), line.getOrderedQuantity(), Integer::sum);
+        }
+        reservations.put(reservation.id(), reservation);
+    }
+
+    // Must hold the stripes of the reservation's products. Returns false if it was already removed.
+    private boolean removeHolds(Reservation reservation) {
+        if (reservations.remove(reservation.id()) == null) {
+            return false;
+        }
+        for (Product line : reservation.lines()) {
+            // remove the entry once nothing is held, so the map only has products with active holds
+            heldByProduct.computeIfPresent(line.getProductId(), (id, held) -> {
+                int left = held - line.getOrderedQuantity();
+                return left > 0 ? left : null;
+            });
+        }
+        return true;
+    }
+
+    private static List<String> productIdsOf(List<Product> proList) {
+        List<String> productIds = new ArrayList<>();
+        for (Product product : proList) {
+            productIds.add(product.getProductId());
+        }
+        return productIds;
+    }
+
+    /**
+     * Stock held for one checkout.
+     * @param id              unique reservation number
+     * @param lines           the reserved trolley lines, sorted by product ID
+     * @param expiresAtMillis when the sweeper releases the holds if the payment has not finished
+     */
+    public record Reservation(long id, ArrayList<Product> lines, long expiresAtMillis) {}
+
+    /**
+     * The outcome of reserve(): reservation is null when insufficientProducts is not empty.
+     */
+    public record ReservationResult(Reservation reservation, ArrayList<Product> insufficientProducts) {
+        public boolean isReserved() {
+            return reservation != null;
+        }
+    }
+
+    /**
+     * A snapshot of the reservation counters.
+     */
+    public record ReservationStats(int active, long reserved, long rejected, long purchased,
+                                   long released, long expired) {}
+}
@@ -0,0 +1,216 @@
+package ci553.happyshop.storageAccess;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * StorageMetrics records how long the storage layer takes, so slow operations can be found
+ * (eg the ones that push a checkout past its time limit).
+ *
+ * Two things are recorded:
+ * - A LatencyHistogram per operation (eg "DatabaseRW.purchaseStocks", "UserDAO.findByUsername"):
+ *   call count, error count, mean, p50/p90/p99 and max. Fed by TimedDatabaseRW and the DAOs.
+ * - A slow-query log: every statement prepared on a pooled connection that takes longer than
+ *   happyshop.metrics.slowQueryMillis (default 50) is kept with its SQL text, bind parameters and
+ *   duration. Only the latest happyshop.metrics.slowQueryLogSize (default 100) entries are kept.
+ *   Bind parameters of statements on the tables in REDACTED_TABLES (card digits, password hashes)
+ *   are logged as "<redacted>".
+ *
+ * Recording can be turned off with -Dhappyshop.metrics.enabled=false.
+ *
+ * Usage:
+ * <pre>
+ *     List&lt;StorageMetrics.OperationStats&gt; stats = StorageMetrics.getInstance().snapshot();
+ *     System.out.println(StorageMetrics.getInstance().report());
+ *     StorageMetrics.getInstance().reset();
+ * </pre>
+ */
+
+public class StorageMetrics {
+    private static final StorageMetrics storageMetrics = new StorageMetrics(
+            Boolean.parseBoolean(System.getProperty("happyshop.metrics.enabled", "true")),
+            Long.getLong("happyshop.metrics.slowQueryMillis", 50),
+            Integer.getInteger("happyshop.metrics.slowQueryLogSize", 100));
+
+    private static final int maxParameterLength = 100; // longer bind values are cut in the slow-query log
+    private static final List<String> REDACTED_TABLES = List.of("transactiontable", "usertable"); // lower case
+
+    private final boolean enabled;
+    private final long slowQueryNanos;
+    private final int slowQueryLogSize;
+    private volatile ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ArrayDeque<SlowQuery> slowQueries = new ArrayDeque<>(); // guarded by itself
+
+    /**
+     * A storage call that is timed, eg () -> findByUsername(connection, username)
+     */
+    @FunctionalInterface
+    public interface StorageCall<T> {
+        T call() throws SQLException;
+    }
+
+    //Singleton pattern
+    private StorageMetrics(boolean enabled, long slowQueryMillis, int slowQueryLogSize) {
+        this.enabled = enabled;
+        this.slowQueryNanos = slowQueryMillis * 1_000_000;
+        this.slowQueryLogSize = Math.max(0, slowQueryLogSize);
+    }
+
+    public static StorageMetrics getInstance() {
+        return storageMetrics;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Runs the call and records its duration under the operation name.
+     * A call that throws is counted as an error and the exception is passed on.
+     */
+    public <T> T time(String operation, StorageCall<T> call) throws SQLException {
+        if (!enabled) {
+            return call.call();
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.call();
+            failed = false;
+            return result;
+        } finally {
+            record(operation, System.nanoTime() - start, failed);
+        }
+    }
+
+    public void record(String operation, long nanos, boolean failed) {
+        if (!enabled) return;
+        histograms.computeIfAbsent(operation, name -> new LatencyHistogram()).record(nanos, failed);
+    }
+
+    // Called by TimedStatement after each execute, only slow statements are kept
+    void recordStatement(String sql, List<Object> parameters, long nanos, boolean failed) {
+        if (nanos < slowQueryNanos || slowQueryLogSize == 0) return;
+
+        boolean redacted = isRedacted(sql);
+        List<String> shownParameters = new ArrayList<>(parameters.size());
+        for (Object parameter : parameters) {
+            String text = redacted ? "<redacted>" : String.valueOf(parameter);
+            shownParameters.add(text.length() > maxParameterLength ? text.substring(0, maxParameterLength) + "..." : text);
+        }
+        SlowQuery slowQuery = new SlowQuery(System.currentTimeMillis(), sql, shownParameters,
+                nanos / 1_000_000.0, failed, Thread.currentThread().getName());
+        synchronized (slowQueries) {
+            if (slowQueries.size() == slowQueryLogSize) {
+                slowQueries.pollFirst(); // drop the oldest
+            }
+            slowQueries.addLast(slowQuery);
+        }
+        System.out.println("Slow query: " + slowQuery);
+    }
+
+    // Whether the statement touches a table whose values must not end up in the log
+    private static boolean isRedacted(String sql) {
+        String lowerSql = sql.toLowerCase();
+        for (String table : REDACTED_TABLES) {
+            if (lowerSql.contains(table)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Wraps a statement so its executions are checked against the slow-query threshold.
+     * Returns the statement unchanged when metrics are disabled.
+     */
+    PreparedStatement wrapStatement(PreparedStatement pstmt, String sql) {
+        return enabled ? TimedStatement.wrap(pstmt, sql, this) : pstmt;
+    }
+
+    /**
+     * Returns the statistics of every operation recorded since start-up or the last reset, sorted by name.
+     */
+    public List<OperationStats> snapshot() {
+        return statsOf(histograms);
+    }
+
+    /**
+     * Returns the statistics like snapshot() and starts recording afresh, eg for reporting per interval.
+     * The slow-query log is kept.
+     */
+    public List<OperationStats> snapshotAndReset() {
+        ConcurrentHashMap<String, LatencyHistogram> previous = histograms;
+        histograms = new ConcurrentHashMap<>();
+        return statsOf(previous);
+    }
+
+    //Returns the slow-query log, oldest first
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            return new ArrayList<>(slowQueries);
+        }
+    }
+
+    //Clears the histograms and the slow-query log
+    public void reset() {
+        histograms = new ConcurrentHashMap<>();
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+
+    /**
+     * Returns the operation statistics as text, one operation per line.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder("Storage metrics:\n");
+        for (OperationStats stats : snapshot()) {
+            report.append("  ").append(stats).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static List<OperationStats> statsOf(Map<String, LatencyHistogram> histograms) {
+        List<OperationStats> statsList = new ArrayList<>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            statsList.add(new OperationStats(entry.getKey(), h.getCount(), h.getErrorCount(), h.getMeanMillis(),
+                    h.percentileMillis(0.50), h.percentileMillis(0.90), h.percentileMillis(0.99), h.getMaxMillis()));
+        }
+        statsList.sort((a, b) -> a.operation().compareTo(b.operation()));
+        return statsList;
+    }
+
+    /**
+     * A snapshot of the latency of one operation, all times in milliseconds.
+     */
+    public record OperationStats(String operation, long count, long errors, double meanMillis,
+                                 double p50Millis, double p90Millis, double p99Millis, double maxMillis) {
+        @Override
+        public String toString() {
+            return String.format("%s[count=%d, errors=%d, mean=%.3fms, p50=%.3fms, p90=%.3fms, p99=%.3fms, max=%.3fms]",
+                    operation, count, errors, meanMillis, p50Millis, p90Millis, p99Millis, maxMillis);
+        }
+    }
+
+    /**
+     * One entry of the slow-query log.
+     * @param timestampMillis when the statement finished
+     * @param sql             the statement text
+     * @param parameters      the bind values, in parameter order
+     * @param durationMillis  how long the execute call took
+     * @param failed          true if the statement threw
+     * @param thread          the thread that ran it
+     */
+    public record SlowQuery(long timestampMillis, String sql, List<String> parameters, double durationMillis,
+                            boolean failed, String thread) {
+        @Override
+        public String toString() {
+            return String.format("%.3fms%s [%s] %s %s", durationMillis, failed ? " FAILED" : "", thread, sql, parameters);
+        }
+    }
+}
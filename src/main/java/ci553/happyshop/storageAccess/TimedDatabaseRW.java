@@ -0,0 +1,73 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * TimedDatabaseRW is a decorator that records the duration of every DatabaseRW call in StorageMetrics,
+ * under the name "DatabaseRW.&lt;method&gt;".
+ *
+ * DatabaseRWFactory puts it outermost, so the times are what the clients see:
+ * cache hits, waits for a pooled connection or a product lock and the SQL itself.
+ */
+
+public class TimedDatabaseRW implements DatabaseRW {
+    private static final StorageMetrics storageMetrics = StorageMetrics.getInstance();
+
+    private final DatabaseRW delegate;
+
+    public TimedDatabaseRW(DatabaseRW delegate) {
+        this.delegate = delegate;
+    }
+
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        return storageMetrics.time("DatabaseRW.searchProduct", () -> delegate.searchProduct(keyword));
+    }
+
+    public ProductPage searchProductPage(String keyword, int offset, int pageSize, ProductSortKey sortKey)
+            throws SQLException {
+        return storageMetrics.time("DatabaseRW.searchProductPage",
+                () -> delegate.searchProductPage(keyword, offset, pageSize, sortKey));
+    }
+
+    public Product searchByProductId(String productId) throws SQLException {
+        return storageMetrics.time("DatabaseRW.searchByProductId", () -> delegate.searchByProductId(productId));
+    }
+
+    public Map<String, Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        return storageMetrics.time("DatabaseRW.searchByProductIds", () -> delegate.searchByProductIds(productIds));
+    }
+
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+        return storageMetrics.time("DatabaseRW.purchaseStocks", () -> delegate.purchaseStocks(proList));
+    }
+
+    public void updateProduct(String id, String des, double price, String imageName, int stock) throws SQLException {
+        storageMetrics.time("DatabaseRW.updateProduct", () -> {
+            delegate.updateProduct(id, des, price, imageName, stock);
+            return null;
+        });
+    }
+
+    public void deleteProduct(String id) throws SQLException {
+        storageMetrics.time("DatabaseRW.deleteProduct", () -> {
+            delegate.deleteProduct(id);
+            return null;
+        });
+    }
+
+    public void insertNewProduct(String id, String des, double price, String image, int stock) throws SQLException {
+        storageMetrics.time("DatabaseRW.insertNewProduct", () -> {
+            delegate.insertNewProduct(id, des, price, image, stock);
+            return null;
+        });
+    }
+
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        return storageMetrics.time("DatabaseRW.isProIdAvailable", () -> delegate.isProIdAvailable(productId));
+    }
+}
@@ -0,0 +1,74 @@
+package ci553.happyshop.storageAccess;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A PreparedStatement wrapper that remembers the bind values and times every execute call,
+ * so StorageMetrics can log slow statements with their parameters.
+ *
+ * Every other call is passed to the real statement unchanged. Like the statement it wraps,
+ * it is only used by the thread that has borrowed its connection.
+ */
+
+class TimedStatement implements InvocationHandler {
+    private final PreparedStatement target;
+    private final String sql;
+    private final StorageMetrics storageMetrics;
+    private final List<Object> parameters = new ArrayList<>(); // index 0 holds parameter 1
+
+    private TimedStatement(PreparedStatement target, String sql, StorageMetrics storageMetrics) {
+        this.target = target;
+        this.sql = sql;
+        this.storageMetrics = storageMetrics;
+    }
+
+    static PreparedStatement wrap(PreparedStatement target, String sql, StorageMetrics storageMetrics) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new TimedStatement(target, sql, storageMetrics));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.startsWith("execute")) {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invokeTarget(method, args);
+                failed = false;
+                return result;
+            } finally {
+                storageMetrics.recordStatement(sql, parameters, System.nanoTime() - start, failed);
+            }
+        }
+
+        if (name.equals("clearParameters")) {
+            parameters.clear();
+        } else if (name.startsWith("set") && method.getDeclaringClass() == PreparedStatement.class
+                && args != null && args.length >= 2 && args[0] instanceof Integer index && index > 0) {
+            rememberParameter(index, name.equals("setNull") ? null : args[1]);
+        }
+        return invokeTarget(method, args);
+    }
+
+    private void rememberParameter(int index, Object value) {
+        while (parameters.size() < index) {
+            parameters.add(null);
+        }
+        parameters.set(index - 1, value);
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause(); // the SQLException thrown by the driver
+        }
+    }
+}
@@ -11,10 +11,12 @@ import java.sql.*;
  */
 public class TransactionDAO {
 
-    private Connection connection;
+    private static final StorageMetrics storageMetrics = StorageMetrics.getInstance();
 
-    public TransactionDAO(Connection connection) {
-        this.connection = connection;
+    private final ConnectionPool connectionPool;
+
+    public TransactionDAO(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
     }
 
     /**
@@ -26,70 +28,75 @@ public class TransactionDAO {
      * @return Generated transaction ID
      * @throws SQLException if database error
      */
-    public int recordTransaction(int orderID, Payment payment) throws SQLException {
+    public int recordTransaction(long orderID, Payment payment) throws SQLException {
         String sql = "INSERT INTO TransactionTable " +
                 "(orderID, paymentMethod, amount, status, cardLastFour) " +
                 "VALUES (?, ?, ?, ?, ?)";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql,
-                Statement.RETURN_GENERATED_KEYS)) {
-
-            pstmt.setInt(1, orderID);
-            pstmt.setString(2, payment.getPaymentMethod());
-            pstmt.setDouble(3, payment.getAmount());
-            pstmt.setString(4, payment.getStatus());
-
-            // If it's a card payment, store last 4 digits
-            // Otherwise store null
-            if (payment instanceof CardPayment) {
-                CardPayment cardPayment = (CardPayment) payment;
-                pstmt.setString(5, cardPayment.getLastFourDigits());
-            } else {
-                pstmt.setNull(5, Types.CHAR);
-            }
+        return storageMetrics.time("TransactionDAO.recordTransaction", () -> {
+            try (PooledConnection pc = connectionPool.borrow()) {
+                PreparedStatement pstmt = pc.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS); // cached, do not close
 
-            pstmt.executeUpdate();
+                pstmt.setLong(1, orderID);
+                pstmt.setString(2, payment.getPaymentMethod());
+                pstmt.setDouble(3, payment.getAmount());
+                pstmt.setString(4, payment.getStatus());
 
-            // Get the generated transaction ID
-            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    int transactionID = generatedKeys.getInt(1);
-                    System.out.println("✅ Transaction recorded: ID=" + transactionID);
-                    return transactionID;
+                // If it's a card payment, store last 4 digits
+                // Otherwise store null
+                if (payment instanceof CardPayment) {
+                    CardPayment cardPayment = (CardPayment) payment;
+                    pstmt.setString(5, cardPayment.getLastFourDigits());
                 } else {
-                    throw new SQLException("Recording transaction failed, no ID obtained");
+                    pstmt.setNull(5, Types.CHAR);
+                }
+
+                pstmt.executeUpdate();
+
+                // Get the generated transaction ID
+                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        int transactionID = generatedKeys.getInt(1);
+                        System.out.println("✅ Transaction recorded: ID=" + transactionID);
+                        return transactionID;
+                    } else {
+                        throw new SQLException("Recording transaction failed, no ID obtained");
+                    }
                 }
             }
-        }
+        });
     }
 
     /**
      * Gets all transactions for a specific order
      * Useful for viewing payment history
      */
-    public String getTransactionHistory(int orderID) throws SQLException {
+    public String getTransactionHistory(long orderID) throws SQLException {
         String sql = "SELECT * FROM TransactionTable WHERE orderID = ? " +
                 "ORDER BY transactionDateTime DESC";
 
-        StringBuilder history = new StringBuilder();
-
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, orderID);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    history.append(String.format(
-                            "Transaction %d: %s £%.2f (%s) on %s\n",
-                            rs.getInt("transactionID"),
-                            rs.getString("paymentMethod"),
-                            rs.getDouble("amount"),
-                            rs.getString("status"),
-                            rs.getTimestamp("transactionDateTime")
-                    ));
+        return storageMetrics.time("TransactionDAO.getTransactionHistory", () -> {
+            StringBuilder history = new StringBuilder();
+
+            try (PooledConnection pc = connectionPool.borrow()) {
+                PreparedStatement pstmt = pc.prepareStatement(sql);
+                pstmt.setLong(1, orderID);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        history.append(String.format(
+                                "Transaction %d: %s £%.2f (%s) on %s\n",
+                                rs.getInt("transactionID"),
+                                rs.getString("paymentMethod"),
+                                rs.getDouble("amount"),
+                                rs.getString("status"),
+                                rs.getTimestamp("transactionDateTime")
+                        ));
+                    }
                 }
             }
-        }
 
-        return history.toString();
+            return history.toString();
+        });
     }
 }
\ No newline at end of file
@@ -13,15 +13,18 @@ import java.sql.*;
  */
 public class UserDAO {
 
-    private Connection connection;
+    private static final StorageMetrics storageMetrics = StorageMetrics.getInstance();
+
+    private final ConnectionPool connectionPool;
 
     /**
-     * Constructor receives database connection
+     * Constructor receives the shared connection pool
+     * Each call borrows a connection, so statements are prepared once per pooled connection
      *
-     * @param connection Active database connection
+     * @param connectionPool Pool to borrow connections from (see DatabaseRWFactory.getConnectionPool())
      */
-    public UserDAO(Connection connection) {
-        this.connection = connection;
+    public UserDAO(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
     }
 
     /**
@@ -42,37 +45,40 @@ public class UserDAO {
                 "LEFT JOIN StaffTable s ON u.userID = s.userID " +
                 "WHERE u.username = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    String userType = rs.getString("userType");
-
-                    // Create appropriate subclass based on userType
-                    if ("Customer".equals(userType)) {
-                        return new Customer(
-                                rs.getInt("userID"),
-                                rs.getString("username"),
-                                rs.getString("passwordHash"),
-                                rs.getString("email"),
-                                rs.getInt("customerID"),
-                                rs.getInt("loyaltyPoints")
-                        );
-                    } else if ("Staff".equals(userType)) {
-                        return new Staff(
-                                rs.getInt("userID"),
-                                rs.getString("username"),
-                                rs.getString("passwordHash"),
-                                rs.getString("email"),
-                                rs.getInt("staffID"),
-                                rs.getString("role")
-                        );
+        return storageMetrics.time("UserDAO.findByUsername", () -> {
+            try (PooledConnection pc = connectionPool.borrow()) {
+                PreparedStatement pstmt = pc.prepareStatement(sql); // cached, do not close
+                pstmt.setString(1, username);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        String userType = rs.getString("userType");
+
+                        // Create appropriate subclass based on userType
+                        if ("Customer".equals(userType)) {
+                            return new Customer(
+                                    rs.getInt("userID"),
+                                    rs.getString("username"),
+                                    rs.getString("passwordHash"),
+                                    rs.getString("email"),
+                                    rs.getInt("customerID"),
+                                    rs.getInt("loyaltyPoints")
+                            );
+                        } else if ("Staff".equals(userType)) {
+                            return new Staff(
+                                    rs.getInt("userID"),
+                                    rs.getString("username"),
+                                    rs.getString("passwordHash"),
+                                    rs.getString("email"),
+                                    rs.getInt("staffID"),
+                                    rs.getString("role")
+                            );
+                        }
                     }
                 }
             }
-        }
-        return null;  // User not found
+            return null;  // User not found
+        });
     }
 
     /**
@@ -84,6 +90,15 @@ public class UserDAO {
      * @throws SQLException if database error occurs
      */
     public int createUser(User user) throws SQLException {
+        return storageMetrics.time("UserDAO.createUser", () -> {
+            try (PooledConnection pc = connectionPool.borrow()) {
+                return createUser(pc, user);
+            }
+        });
+    }
+
+    private int createUser(PooledConnection pc, User user) throws SQLException {
+        Connection connection = pc.getConnection();
         boolean originalAutoCommit = connection.getAutoCommit();
         connection.setAutoCommit(false);  // Start transaction
 
@@ -92,54 +107,48 @@ public class UserDAO {
             String userSQL = "INSERT INTO UserTable (username, passwordHash, email, userType) " +
                     "VALUES (?, ?, ?, ?)";
 
-            int userId;
-            try (PreparedStatement pstmt = connection.prepareStatement(userSQL,
-                    Statement.RETURN_GENERATED_KEYS)) {
-                pstmt.setString(1, user.getUsername());
-                pstmt.setString(2, ((User)user).getPasswordHash());
-                pstmt.setString(3, user.getEmail());
-                pstmt.setString(4, user.getUserType());
+            PreparedStatement userStmt = pc.prepareStatement(userSQL, Statement.RETURN_GENERATED_KEYS); // cached, do not close
+            userStmt.setString(1, user.getUsername());
+            userStmt.setString(2, ((User)user).getPasswordHash());
+            userStmt.setString(3, user.getEmail());
+            userStmt.setString(4, user.getUserType());
 
-                pstmt.executeUpdate();
+            userStmt.executeUpdate();
 
-                // Get generated user ID
-                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        userId = generatedKeys.getInt(1);
-                        user.setUserId(userId);
-                    } else {
-                        throw new SQLException("Creating user failed, no ID obtained.");
-                    }
+            // Get generated user ID
+            int userId;
+            try (ResultSet generatedKeys = userStmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    userId = generatedKeys.getInt(1);
+                    user.setUserId(userId);
+                } else {
+                    throw new SQLException("Creating user failed, no ID obtained.");
                 }
             }
 
             // Step 2: Insert into CustomerTable or StaffTable
             if (user instanceof Customer) {
                 String custSQL = "INSERT INTO CustomerTable (userID, loyaltyPoints) VALUES (?, ?)";
-                try (PreparedStatement pstmt = connection.prepareStatement(custSQL,
-                        Statement.RETURN_GENERATED_KEYS)) {
-                    pstmt.setInt(1, userId);
-                    pstmt.setInt(2, ((Customer)user).getLoyaltyPoints());
-                    pstmt.executeUpdate();
-
-                    try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                        if (generatedKeys.next()) {
-                            ((Customer)user).setCustomerId(generatedKeys.getInt(1));
-                        }
+                PreparedStatement pstmt = pc.prepareStatement(custSQL, Statement.RETURN_GENERATED_KEYS);
+                pstmt.setInt(1, userId);
+                pstmt.setInt(2, ((Customer)user).getLoyaltyPoints());
+                pstmt.executeUpdate();
+
+                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        ((Customer)user).setCustomerId(generatedKeys.getInt(1));
                     }
                 }
             } else if (user instanceof Staff) {
                 String staffSQL = "INSERT INTO StaffTable (userID, role) VALUES (?, ?)";
-                try (PreparedStatement pstmt = connection.prepareStatement(staffSQL,
-                        Statement.RETURN_GENERATED_KEYS)) {
-                    pstmt.setInt(1, userId);
-                    pstmt.setString(2, ((Staff)user).getRole());
-                    pstmt.executeUpdate();
-
-                    try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                        if (generatedKeys.next()) {
-                            ((Staff)user).setStaffId(generatedKeys.getInt(1));
-                        }
+                PreparedStatement pstmt = pc.prepareStatement(staffSQL, Statement.RETURN_GENERATED_KEYS);
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, ((Staff)user).getRole());
+                pstmt.executeUpdate();
+
+                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        ((Staff)user).setStaffId(generatedKeys.getInt(1));
                     }
                 }
             }
@@ -168,15 +177,18 @@ public class UserDAO {
     public boolean usernameExists(String username) throws SQLException {
         String sql = "SELECT COUNT(*) FROM UserTable WHERE username = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, username);
+        return storageMetrics.time("UserDAO.usernameExists", () -> {
+            try (PooledConnection pc = connectionPool.borrow()) {
+                PreparedStatement pstmt = pc.prepareStatement(sql);
+                pstmt.setString(1, username);
 
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1) > 0;
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return rs.getInt(1) > 0;
+                    }
                 }
             }
-        }
-        return false;
+            return false;
+        });
     }
 }
\ No newline at end of file
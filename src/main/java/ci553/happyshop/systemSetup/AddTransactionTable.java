@@ -13,7 +13,7 @@ public class AddTransactionTable {
             String createTable =
                     "CREATE TABLE TransactionTable (" +
                             "transactionID INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY, " +
-                            "orderID INT NOT NULL, " +
+                            "orderID BIGINT NOT NULL, " +
                             "paymentMethod VARCHAR(20) NOT NULL, " +
                             "amount DOUBLE NOT NULL, " +
                             "transactionDateTime TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
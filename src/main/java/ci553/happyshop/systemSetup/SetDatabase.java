@@ -1,12 +1,14 @@
 package ci553.happyshop.systemSetup;
 
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.SchemaMigrator;
 import ci553.happyshop.utility.StorageLocation;
 
 import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.*;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -22,6 +24,7 @@ import java.util.concurrent.locks.ReentrantLock;
  * 1. Deletes all existing tables in the database.
  * 2. Recreates the database tables based on the initial schema.
  * 3. Inserts default values into the newly created tables.
+ *    Then applies the schema migrations (indexes etc., see SchemaMigrator) to the fresh tables.
  * 4. Deletes all existing image files from the working image folder (images/).
  * 5. Copies all image files from the backup folder (images_resetDB/) into the working image folder.
  */
@@ -35,16 +38,39 @@ public class SetDatabase {
     private static Path imageWorkingFolderPath = StorageLocation.imageFolderPath;
     private static Path imageBackupFolderPath = StorageLocation.imageResetFolderPath;
 
-    private String[] tables = {"ProductTable", "TransactionTable", "CustomerTable", "StaffTable", "UserTable"};
+    private String[] tables = {"ProductTable", "TransactionTable", "CustomerTable", "StaffTable", "UserTable",
+            "SchemaVersionTable"};
     // Currently only "ProductTable" exists, but using an array allows easy expansion
     // if more tables need to be processed in the future without changing the logic structure.
 
     private static final Lock lock = new ReentrantLock();    // Create a global lock
 
+    // One row of the sample ProductTable
+    public record SampleProduct(String productId, String description, double unitPrice, String image, int inStock) {}
+
+    /**
+     * The products of a fresh database. InMemoryRW.withSampleProducts() loads the same list,
+     * so the Derby and in-memory backends start with the same products.
+     */
+    public static final List<SampleProduct> sampleProducts = List.of(
+            new SampleProduct("0001", "40 inch TV", 269.00, "0001.jpg", 100),
+            new SampleProduct("0002", "DAB Radio", 29.99, "0002.jpg", 100),
+            new SampleProduct("0003", "Toaster", 19.99, "0003.jpg", 100),
+            new SampleProduct("0004", "Watch", 29.99, "0004.jpg", 100),
+            new SampleProduct("0005", "Digital Camera", 89.99, "0005.jpg", 100),
+            new SampleProduct("0006", "MP3 player", 7.99, "0006.jpg", 100),
+            new SampleProduct("0007", "USB drive", 6.99, "0007.jpg", 100),
+            new SampleProduct("0008", "USB2 drive", 7.99, "0008.jpg", 100),
+            new SampleProduct("0009", "USB3 drive", 8.99, "0009.jpg", 100),
+            new SampleProduct("0010", "USB4 drive", 9.99, "0010.jpg", 100),
+            new SampleProduct("0011", "USB5 drive", 10.99, "0011.jpg", 100),
+            new SampleProduct("0012", "USB6 drive", 10.99, "0011.jpg", 100));
+
     public static void main(String[] args) throws SQLException, IOException {
         SetDatabase setDB = new SetDatabase();
         setDB.clearTables(); // clear all tables in the tables array from database if they are existing
         setDB.initializeTable();//create and initialize databse and tables
+        setDB.migrateSchema(); //bring the fresh tables up to the latest schema version
         setDB.queryTableAfterInitilization();
         deleteFilesInFolder(imageWorkingFolderPath);
         copyFolderContents(imageBackupFolderPath, imageWorkingFolderPath);
@@ -76,7 +102,19 @@ public class SetDatabase {
     //Recreates the database tables Inserts default values into the newly created tables.
     private void initializeTable() throws SQLException {
         lock.lock(); // Lock to ensure thread safety
+        try (Connection connection = DriverManager.getConnection(dbURL)) {
+            System.out.println("Database happyShopDB is created successfully!");
+            createTablesWithSampleData(connection);
+        } finally {
+            lock.unlock(); // Ensure the lock is released after the operation
+        }
+    }
 
+    /**
+     * Creates the tables and inserts the default values using the given connection.
+     * Also used by DatabaseRWFactory to set up a fresh in-memory Derby database (jdbc:derby:memory:).
+     */
+    public static void createTablesWithSampleData(Connection connection) throws SQLException {
         // Table creation and insert statements
         String[] iniTableSQL = {
                 // Create ProductTable
@@ -89,20 +127,6 @@ public class SetDatabase {
                         "CHECK (inStock >= 0)" +
                         ")",
 
-                // Insert data into ProductTable
-                "INSERT INTO ProductTable VALUES('0001', '40 inch TV', 269.00,'0001.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0002', 'DAB Radio', 29.99, '0002.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0003', 'Toaster', 19.99, '0003.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0004', 'Watch', 29.99, '0004.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0005', 'Digital Camera', 89.99, '0005.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0006', 'MP3 player', 7.99, '0006.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0007', 'USB drive', 6.99, '0007.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0008', 'USB2 drive', 7.99, '0008.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0009', 'USB3 drive', 8.99, '0009.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0010', 'USB4 drive', 9.99, '0010.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0011', 'USB5 drive', 10.99, '0011.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0012', 'USB6 drive', 10.99, '0011.jpg',100)",
-
                 // Create UserTable - stores all user accounts
                 "CREATE TABLE UserTable(" +
                         "userID INTEGER PRIMARY KEY GENERATED ALWAYS AS IDENTITY," +
@@ -148,7 +172,7 @@ public class SetDatabase {
 // Links each order to its payment details for audit trail
                 "CREATE TABLE TransactionTable(" +
                         "transactionID INTEGER PRIMARY KEY GENERATED ALWAYS AS IDENTITY," +  // auto-incrementing ID
-                        "orderID INTEGER NOT NULL," +  // which order this payment is for
+                        "orderID BIGINT NOT NULL," +  // which order this payment is for (order IDs are 64-bit)
                         "paymentMethod VARCHAR(20) NOT NULL," +  // CreditCard, DebitCard, or PayPal
                         "amount DOUBLE NOT NULL," +  // total payment amount
                         "transactionDateTime TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +  // when payment happened
@@ -159,32 +183,52 @@ public class SetDatabase {
                         ")",
         };
 
-        try (Connection connection = DriverManager.getConnection(dbURL)) {
-            System.out.println("Database happyShopDB is created successfully!");
-            connection.setAutoCommit(false); // Disable auto-commit for the batch
+        connection.setAutoCommit(false); // Disable auto-commit for the batch
+        try (Statement statement = connection.createStatement()) {
+            // First, create the table (DDL) - Execute this one separately from DML
+            statement.executeUpdate(iniTableSQL[0]);  // Execute Create Table SQL
+
+            // Insert the sample products into ProductTable
+            try (PreparedStatement insertProduct = connection.prepareStatement(
+                    "INSERT INTO ProductTable VALUES(?, ?, ?, ?, ?)")) {
+                for (SampleProduct product : sampleProducts) {
+                    insertProduct.setString(1, product.productId());
+                    insertProduct.setString(2, product.description());
+                    insertProduct.setDouble(3, product.unitPrice());
+                    insertProduct.setString(4, product.image());
+                    insertProduct.setInt(5, product.inStock());
+                    insertProduct.addBatch();
+                }
+                insertProduct.executeBatch();
+            }
 
-            try (Statement statement = connection.createStatement()) {
-                // First, create the table (DDL) - Execute this one separately from DML
-                statement.executeUpdate(iniTableSQL[0]);  // Execute Create Table SQL
+            // Prepare and execute the insert operations (DML)
+            for (int i = 1; i < iniTableSQL.length; i++) {
+                statement.addBatch(iniTableSQL[i]);  // Add insert queries to batch
+            }
 
-                // Prepare and execute the insert operations (DML)
-                for (int i = 1; i < iniTableSQL.length; i++) {
-                    statement.addBatch(iniTableSQL[i]);  // Add insert queries to batch
-                }
+            // Execute all the insert statements in the batch
+            statement.executeBatch();
+            connection.commit(); // Commit the transaction if everything was successful
 
-                // Execute all the insert statements in the batch
-                statement.executeBatch();
-                connection.commit(); // Commit the transaction if everything was successful
+            System.out.println("Table and data initialized successfully.");
 
-                System.out.println("Table and data initialized successfully.");
+        } catch (SQLException e) {
+            connection.rollback(); // Rollback the transaction in case of an error
+            System.err.println("Transaction rolled back due to an error!");
+            e.printStackTrace();
+        }
+        connection.setAutoCommit(true);
+    }
 
-            } catch (SQLException e) {
-                connection.rollback(); // Rollback the transaction in case of an error
-                System.err.println("Transaction rolled back due to an error!");
-                e.printStackTrace();
-            }
+    //Applies every schema migration to the freshly created tables
+    private void migrateSchema() throws SQLException {
+        lock.lock();
+        try (Connection connection = DriverManager.getConnection(dbURL)) {
+            int version = SchemaMigrator.migrate(connection);
+            System.out.println("Database schema is at version " + version);
         } finally {
-            lock.unlock(); // Ensure the lock is released after the operation
+            lock.unlock();
         }
     }
 
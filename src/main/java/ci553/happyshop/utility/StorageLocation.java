@@ -25,6 +25,15 @@ import java.nio.file.Paths;
  *         Subfolder to store orders in the "Progressing" state (e.g., being prepared by a picker).
  *    - collectedPath:
  *         Subfolder to store orders in the "Collected" state (e.g., customer collected).
+ *    - journalPath:
+ *         Subfolder for the order journal, which replaces the three folders above unless the
+ *         legacy file-per-order store is selected (see OrderStoreFactory).
+ *    - archivePath:
+ *         Subfolder for the compressed archive segments that collected order files are rolled into
+ *         (see OrderArchive).
+ *    - orderSnapshotPath:
+ *         Binary snapshot of the uncollected orders, so the file-per-order store can start without
+ *         listing unchanged folders (see OrderStateSnapshot).
  *
  * 3. Order ID Tracking:
  *    - orderCounterFile / orderCounterPath:
@@ -60,6 +69,9 @@ public class StorageLocation {
     public static final Path orderedPath = ordersPath.resolve("ordered");//orders/ordered to store orders at Ordered state
     public static final Path progressingPath = ordersPath.resolve("progressing");// orders/progressing to store orders at Progressing state
     public static final Path collectedPath = ordersPath.resolve("collected");//orders/collected to store orders at Collected state
+    public static final Path journalPath = ordersPath.resolve("journal");//orders/journal for the order journal segments (see OrderJournal)
+    public static final Path archivePath = ordersPath.resolve("archive");//orders/archive for archived collected orders (see OrderArchive)
+    public static final Path orderSnapshotPath = ordersPath.resolve("orderState.snapshot");//snapshot of the uncollected orders for FileOrderStore
 
     //OrderCounter File and its Path, ie orders/orderCounter.txt
     public static final String orderCounterFile = "orderCounter.txt";
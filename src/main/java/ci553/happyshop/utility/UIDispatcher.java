@@ -0,0 +1,91 @@
+package ci553.happyshop.utility;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This final class is the single way models update their views (model-to-view calls), from any thread.
+ *
+ * It provides two static methods:
+ * - runOnFxThread: runs a task on the JavaFX Application Thread, straight away if already on it,
+ *   otherwise with Platform.runLater. Tasks run in the order they were given. Used for updates that must
+ *   all happen, such as applying an order event or adding a record to the warehouse history.
+ * - requestRender: asks for a view to be redrawn. Renders are coalesced: a view that asks for several
+ *   renders within one frame is redrawn once, at the next frame, with the model's latest state.
+ *   Used for redraws that only show the current state, such as the picker and tracker order lists.
+ *
+ * Renders are run by an AnimationTimer, which JavaFX calls once per frame (about 60 times a second).
+ * The timer only runs while renders are waiting, so an idle application does no work per frame.
+ * A burst of orders therefore costs each screen at most one redraw per frame, however many events arrive.
+ */
+
+// final class:  to prevent subclassing
+public final class UIDispatcher {
+    // The latest render requested for each view, keyed by the object that asked for it (the model or the view)
+    private static final Map<Object, Runnable> pendingRenders = new ConcurrentHashMap<>();
+    private static final AtomicBoolean frameRequested = new AtomicBoolean(false); // the timer is started or about to be
+    private static AnimationTimer frameTimer; // only used on the JavaFX thread
+
+    // Private constructor to prevent instantiation
+    private UIDispatcher() {
+        throw new UnsupportedOperationException("final_static class does not have object");
+    }
+
+    public static void runOnFxThread(Runnable task) {
+        if (Platform.isFxApplicationThread()) {
+            task.run();
+        } else {
+            Platform.runLater(task);
+        }
+    }
+
+    /**
+     * Asks for a view to be redrawn at the next frame. Replaces any render already waiting for the same key.
+     * @param key    identifies the view, usually the model or view object itself
+     * @param render redraws the view, reading the model's state when it runs
+     */
+    public static void requestRender(Object key, Runnable render) {
+        pendingRenders.put(key, render);
+        if (frameRequested.compareAndSet(false, true)) {
+            runOnFxThread(UIDispatcher::startFrameTimer);
+        }
+    }
+
+    private static void startFrameTimer() {
+        if (frameTimer == null) {
+            frameTimer = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    renderFrame();
+                }
+            };
+        }
+        frameTimer.start();
+    }
+
+    // Called by the timer once per frame: runs every waiting render, then stops the timer if nothing is left
+    private static void renderFrame() {
+        for (Object key : pendingRenders.keySet()) {
+            Runnable render = pendingRenders.remove(key);
+            if (render != null) {
+                try {
+                    render.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); // one broken view must not stop the others from being drawn
+                }
+            }
+        }
+        if (pendingRenders.isEmpty()) {
+            frameTimer.stop();
+            frameRequested.set(false);
+            // a render requested between the isEmpty check and set(false) found the timer still running
+            if (!pendingRenders.isEmpty() && frameRequested.compareAndSet(false, true)) {
+                frameTimer.start();
+            }
+        }
+    }
+}